@@ -3,7 +3,57 @@ package com.example.awsservicebroker;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
 import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
 
+/**
+ * @param stateBucket bucket where the broker keeps its own state, such as asynchronous
+ * operations, so that it survives restarts and is shared by all broker instances. Kept in
+ * memory if not set.
+ * @param instanceState where the state of S3 and DynamoDB instances is kept. Role tags
+ * limit a role to about 40 instances, while the state bucket has no limit and requires
+ * {@code stateBucket}.
+ * @param bindingPolicy how bindings grant access to the instance. A role holds at most
+ * 10,240 characters of inline policies, so {@code per-instance} shares one policy among
+ * the bindings of an instance, and {@code managed} attaches a customer managed policy
+ * created for each instance, which does not count against that quota. Both require the
+ * {@code state-bucket} instance state, which counts the bindings.
+ */
 @ConfigurationProperties(prefix = "service-broker")
-public record ServiceBrokerProps(@DefaultValue("classpath:catalog.yaml") Resource catalog) {
+public record ServiceBrokerProps(@DefaultValue("classpath:catalog.yaml") Resource catalog,
+		@Nullable String stateBucket, @DefaultValue Operations operations,
+		@DefaultValue("role-tag") InstanceStateBackend instanceState,
+		@DefaultValue("per-binding") BindingPolicy bindingPolicy) {
+
+	public enum InstanceStateBackend {
+
+		ROLE_TAG, STATE_BUCKET
+
+	}
+
+	public enum BindingPolicy {
+
+		/**
+		 * An inline policy for each binding.
+		 */
+		PER_BINDING,
+		/**
+		 * An inline policy for each instance, deleted when its last binding is.
+		 */
+		PER_INSTANCE,
+		/**
+		 * A customer managed policy for each instance, attached to the role while the
+		 * instance has bindings.
+		 */
+		MANAGED
+
+	}
+
+	/**
+	 * @param concurrency number of asynchronous operations of each service run at once
+	 * @param queueCapacity number of asynchronous operations of each service waiting to run
+	 * before new ones are rejected
+	 */
+	public record Operations(@DefaultValue("16") int concurrency, @DefaultValue("1000") int queueCapacity) {
+	}
+
 }
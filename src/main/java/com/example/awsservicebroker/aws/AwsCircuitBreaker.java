@@ -0,0 +1,211 @@
+package com.example.awsservicebroker.aws;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+
+/**
+ * Fails calls to an AWS service fast while it keeps throttling or failing, instead of
+ * letting every request wait through the SDK's retries. Reads and writes have separate
+ * circuits. A circuit opens after {@link CircuitBreakerProps#failureThreshold()}
+ * consecutive throttled, 5xx or I/O failures, rejects calls with a
+ * {@link CircuitOpenException} for {@link CircuitBreakerProps#openDuration()}, and then
+ * lets one call probe the service. The circuit closes if the probe gets an answer and
+ * opens again if it fails. Outcomes of calls let through before the circuit opened are
+ * ignored until it closes again, so that they neither close it early nor keep it open.
+ */
+public class AwsCircuitBreaker implements ExecutionInterceptor {
+
+	public enum State {
+
+		CLOSED, HALF_OPEN, OPEN
+
+	}
+
+	private static final ExecutionAttribute<Boolean> PROBE = new ExecutionAttribute<>("AwsCircuitBreakerProbe");
+
+	private final String service;
+
+	private final Circuit reads;
+
+	private final Circuit writes;
+
+	public AwsCircuitBreaker(String service, CircuitBreakerProps props, MeterRegistry meterRegistry) {
+		this.service = service;
+		this.reads = new Circuit(service, "read", props, meterRegistry);
+		this.writes = new Circuit(service, "write", props, meterRegistry);
+	}
+
+	public String service() {
+		return this.service;
+	}
+
+	/**
+	 * @return the state of the circuit for each class of operations
+	 */
+	public Map<String, State> states() {
+		return Map.of(this.reads.operations, this.reads.state(), this.writes.operations, this.writes.state());
+	}
+
+	@Override
+	public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+		executionAttributes.putAttribute(PROBE, this.circuit(executionAttributes).acquire());
+	}
+
+	@Override
+	public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+		this.circuit(executionAttributes).onSuccess(isProbe(executionAttributes));
+	}
+
+	@Override
+	public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+		Throwable exception = context.exception();
+		if (exception instanceof CircuitOpenException) {
+			return;
+		}
+		if (isServiceFailure(exception)) {
+			this.circuit(executionAttributes).onFailure(isProbe(executionAttributes));
+		}
+		else {
+			// the service answered, if only with an error about the request
+			this.circuit(executionAttributes).onSuccess(isProbe(executionAttributes));
+		}
+	}
+
+	private Circuit circuit(ExecutionAttributes executionAttributes) {
+		String operationName = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+		return operationName != null && isRead(operationName) ? this.reads : this.writes;
+	}
+
+	private static boolean isProbe(ExecutionAttributes executionAttributes) {
+		return Boolean.TRUE.equals(executionAttributes.getAttribute(PROBE));
+	}
+
+	private static boolean isRead(String operationName) {
+		return operationName.startsWith("Get") || operationName.startsWith("List") || operationName.startsWith("Head")
+				|| operationName.startsWith("Describe") || operationName.equals("Query")
+				|| operationName.equals("Scan");
+	}
+
+	private static boolean isServiceFailure(Throwable exception) {
+		if (exception instanceof SdkServiceException serviceException) {
+			return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+		}
+		return exception instanceof SdkClientException && exception.getCause() instanceof IOException;
+	}
+
+	static class Circuit {
+
+		private final String service;
+
+		private final String operations;
+
+		private final int failureThreshold;
+
+		private final Duration openDuration;
+
+		private State state = State.CLOSED;
+
+		private int consecutiveFailures;
+
+		private long openUntil;
+
+		private boolean probing;
+
+		private long probeUntil;
+
+		private final Counter rejected;
+
+		private final Logger logger = LoggerFactory.getLogger(AwsCircuitBreaker.class);
+
+		Circuit(String service, String operations, CircuitBreakerProps props, MeterRegistry meterRegistry) {
+			this.service = service;
+			this.operations = operations;
+			this.failureThreshold = props.failureThreshold();
+			this.openDuration = props.openDuration();
+			this.rejected = meterRegistry.counter("aws.circuit.rejected", "service", service, "operations",
+					operations);
+			Gauge.builder("aws.circuit.state", this, circuit -> circuit.state().ordinal())
+				.description("0 closed, 1 half-open, 2 open")
+				.tag("service", service)
+				.tag("operations", operations)
+				.register(meterRegistry);
+		}
+
+		synchronized State state() {
+			return this.state;
+		}
+
+		/**
+		 * @return whether the call probes the service for a half-open circuit
+		 * @throws CircuitOpenException if the call is rejected
+		 */
+		synchronized boolean acquire() {
+			long now = System.currentTimeMillis();
+			if (this.state == State.OPEN && now >= this.openUntil) {
+				this.state = State.HALF_OPEN;
+				this.probing = false;
+			}
+			if (this.state == State.CLOSED) {
+				return false;
+			}
+			// a probe in flight is given the whole open duration to answer
+			if (this.state == State.HALF_OPEN && (!this.probing || now >= this.probeUntil)) {
+				this.probing = true;
+				this.probeUntil = now + this.openDuration.toMillis();
+				return true;
+			}
+			this.rejected.increment();
+			long retryAfter = this.state == State.OPEN ? this.openUntil - now : this.probeUntil - now;
+			throw new CircuitOpenException(this.service, this.operations, Duration.ofMillis(retryAfter));
+		}
+
+		synchronized void onSuccess(boolean probe) {
+			if (this.ignores(probe)) {
+				return;
+			}
+			if (this.state == State.HALF_OPEN) {
+				logger.info("Closing circuit service={} operations={}", this.service, this.operations);
+			}
+			this.state = State.CLOSED;
+			this.consecutiveFailures = 0;
+			this.probing = false;
+		}
+
+		synchronized void onFailure(boolean probe) {
+			if (this.ignores(probe)) {
+				return;
+			}
+			this.consecutiveFailures++;
+			if (this.state == State.HALF_OPEN || this.consecutiveFailures >= this.failureThreshold) {
+				logger.warn("Opening circuit service={} operations={} failures={}", this.service,
+						this.operations, this.consecutiveFailures);
+				this.state = State.OPEN;
+				this.openUntil = System.currentTimeMillis() + this.openDuration.toMillis();
+				this.probing = false;
+			}
+		}
+
+		/**
+		 * @return whether the outcome is of a call let through before the circuit opened
+		 */
+		private boolean ignores(boolean probe) {
+			return this.state == State.OPEN || (this.state == State.HALF_OPEN && !probe);
+		}
+
+	}
+
+}
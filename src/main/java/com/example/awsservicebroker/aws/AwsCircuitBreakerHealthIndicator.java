@@ -0,0 +1,39 @@
+package com.example.awsservicebroker.aws;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports {@code DEGRADED} while a circuit of an {@link AwsCircuitBreaker} is not closed.
+ * The broker stays up, but calls to that AWS service fail fast.
+ */
+@Component
+public class AwsCircuitBreakerHealthIndicator implements HealthIndicator {
+
+	public static final Status DEGRADED = new Status("DEGRADED");
+
+	private final List<AwsCircuitBreaker> circuitBreakers;
+
+	public AwsCircuitBreakerHealthIndicator(List<AwsCircuitBreaker> circuitBreakers) {
+		this.circuitBreakers = circuitBreakers;
+	}
+
+	@Override
+	public Health health() {
+		Health.Builder builder = Health.up();
+		for (AwsCircuitBreaker circuitBreaker : this.circuitBreakers) {
+			Map<String, AwsCircuitBreaker.State> states = circuitBreaker.states();
+			if (states.values().stream().anyMatch(state -> state != AwsCircuitBreaker.State.CLOSED)) {
+				builder.status(DEGRADED);
+			}
+			builder.withDetail(circuitBreaker.service(), states);
+		}
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.example.awsservicebroker.aws;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Creates the thread pools that isolate the work of each AWS service, so that a slow
+ * service fills only its own pool. Every pool has bounded threads and a bounded queue,
+ * reports the {@code executor.*} metrics under its name, and counts the tasks it could
+ * not accept in {@code executor.rejected}.
+ */
+public final class BoundedExecutors {
+
+	private BoundedExecutors() {
+	}
+
+	/**
+	 * @param threads maximum number of threads
+	 * @param queueCapacity number of tasks waiting for a thread. With {@code 0}, tasks are
+	 * only handed to idle threads and idle threads exit after a minute, which suits tasks
+	 * that wait for other tasks of the same pool.
+	 * @param callerRuns whether a task that the full pool cannot accept runs on the
+	 * submitting thread instead of being rejected with a
+	 * {@link RejectedExecutionException}
+	 */
+	public static ThreadPoolExecutor newExecutor(String name, int threads, int queueCapacity, boolean callerRuns,
+			MeterRegistry meterRegistry) {
+		Counter rejected = meterRegistry.counter("executor.rejected", "name", name);
+		ThreadPoolExecutor.AbortPolicy abortPolicy = new ThreadPoolExecutor.AbortPolicy();
+		ThreadPoolExecutor.CallerRunsPolicy callerRunsPolicy = new ThreadPoolExecutor.CallerRunsPolicy();
+		BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity)
+				: new SynchronousQueue<>();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(queueCapacity > 0 ? threads : 0, threads, 1,
+				TimeUnit.MINUTES, queue, new CustomizableThreadFactory(name + "-"), (task, pool) -> {
+					rejected.increment();
+					if (callerRuns) {
+						callerRunsPolicy.rejectedExecution(task, pool);
+					}
+					else {
+						abortPolicy.rejectedExecution(task, pool);
+					}
+				});
+		new ExecutorServiceMetrics(executor, name, Tags.empty()).bindTo(meterRegistry);
+		return executor;
+	}
+
+}
@@ -0,0 +1,18 @@
+package com.example.awsservicebroker.aws;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param enabled whether calls to IAM, S3 and DynamoDB fail fast while their circuit is
+ * open
+ * @param failureThreshold number of consecutive throttled, 5xx or I/O failures after all
+ * retries that open a circuit
+ * @param openDuration how long a circuit stays open before one call probes the service
+ */
+@ConfigurationProperties(prefix = "circuit-breaker")
+public record CircuitBreakerProps(@DefaultValue("true") boolean enabled, @DefaultValue("5") int failureThreshold,
+		@DefaultValue("30s") Duration openDuration) {
+}
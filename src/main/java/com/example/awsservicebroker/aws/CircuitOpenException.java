@@ -0,0 +1,27 @@
+package com.example.awsservicebroker.aws;
+
+import java.time.Duration;
+
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Thrown instead of calling an AWS service whose circuit is open.
+ */
+public class CircuitOpenException extends SdkClientException {
+
+	private final Duration retryAfter;
+
+	public CircuitOpenException(String service, String operations, Duration retryAfter) {
+		super(SdkClientException.builder()
+			.message("The circuit for %s %s operations is open.".formatted(service, operations)));
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return how long until the circuit lets a call through again
+	 */
+	public Duration retryAfter() {
+		return this.retryAfter;
+	}
+
+}
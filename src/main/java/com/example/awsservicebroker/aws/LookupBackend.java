@@ -0,0 +1,19 @@
+package com.example.awsservicebroker.aws;
+
+/**
+ * How resources are found by tag when their name is not known.
+ */
+public enum LookupBackend {
+
+	/**
+	 * List the resources and read the tags of each.
+	 */
+	SCAN,
+
+	/**
+	 * Ask the Resource Groups Tagging API for resources with matching tags, and fall back
+	 * to {@link #SCAN} when it finds nothing or fails.
+	 */
+	TAGGING_API
+
+}
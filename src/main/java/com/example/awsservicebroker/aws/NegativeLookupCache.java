@@ -0,0 +1,114 @@
+package com.example.awsservicebroker.aws;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Remembers for a short time that a lookup found nothing, so that platform retries for
+ * instances that have already gone do not scan AWS again. Callers must
+ * {@link #invalidate(String) invalidate} a key whenever they create what it refers to. A
+ * lookup that may race with such a creation takes a {@link #generation(String)} before it
+ * starts, and its miss is only remembered if the key has not been invalidated since. A
+ * zero TTL disables the cache.
+ */
+public class NegativeLookupCache {
+
+	private static final int MAX_ENTRIES = 10_000;
+
+	private static final int GENERATION_STRIPES = 1024;
+
+	private final Duration ttl;
+
+	private final Map<String, Long> expirations = new ConcurrentHashMap<>();
+
+	// keys share a stripe, so an invalidation may at worst keep an unrelated miss uncached
+	private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	public NegativeLookupCache(String name, Duration ttl, MeterRegistry meterRegistry) {
+		this.ttl = ttl;
+		this.hits = meterRegistry.counter("negative.lookup.cache", "cache", name, "result", "hit");
+		this.misses = meterRegistry.counter("negative.lookup.cache", "cache", name, "result", "miss");
+	}
+
+	/**
+	 * @return {@code true} if the key was recently looked up and found absent
+	 */
+	public boolean isAbsent(String key) {
+		if (this.ttl.isZero()) {
+			return false;
+		}
+		Long expiration = this.expirations.get(key);
+		if (expiration != null && expiration > System.currentTimeMillis()) {
+			this.hits.increment();
+			return true;
+		}
+		if (expiration != null) {
+			this.expirations.remove(key, expiration);
+		}
+		this.misses.increment();
+		return false;
+	}
+
+	/**
+	 * @return the generation to pass to {@link #markAbsent(String, long)} once the lookup
+	 * started now has found nothing
+	 */
+	public long generation(String key) {
+		return this.generations.get(stripe(key));
+	}
+
+	/**
+	 * Remembers the miss of a lookup unless the key has been invalidated since the lookup
+	 * started, in which case the miss may predate the creation.
+	 */
+	public void markAbsent(String key, long generation) {
+		if (this.generations.get(stripe(key)) != generation) {
+			return;
+		}
+		this.markAbsent(key);
+		if (this.generations.get(stripe(key)) != generation) {
+			// invalidated while marking
+			this.expirations.remove(key);
+		}
+	}
+
+	public void markAbsent(String key) {
+		if (this.ttl.isZero()) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (this.expirations.size() >= MAX_ENTRIES) {
+			this.expirations.values().removeIf(expiration -> expiration <= now);
+			if (this.expirations.size() >= MAX_ENTRIES) {
+				this.expirations.clear();
+			}
+		}
+		this.expirations.put(key, now + this.ttl.toMillis());
+	}
+
+	public void invalidate(String key) {
+		this.generations.incrementAndGet(stripe(key));
+		this.expirations.remove(key);
+	}
+
+	public void invalidateAll() {
+		for (int i = 0; i < GENERATION_STRIPES; i++) {
+			this.generations.incrementAndGet(i);
+		}
+		this.expirations.clear();
+	}
+
+	private static int stripe(String key) {
+		return Math.floorMod(key.hashCode(), GENERATION_STRIPES);
+	}
+
+}
@@ -0,0 +1,15 @@
+package com.example.awsservicebroker.aws;
+
+/**
+ * Receives human-readable progress of a long-running operation, such as the number of
+ * objects deleted so far.
+ */
+@FunctionalInterface
+public interface ProgressReporter {
+
+	ProgressReporter NONE = description -> {
+	};
+
+	void report(String description);
+
+}
@@ -0,0 +1,56 @@
+package com.example.awsservicebroker.aws;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Coalesces concurrent calls for the same key into one execution. The first caller runs
+ * the lookup, and callers arriving while it is in flight wait for it and receive the same
+ * result or exception.
+ */
+public class SingleFlight<V> {
+
+	private final Map<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	private final Counter coalesced;
+
+	public SingleFlight(String name, MeterRegistry meterRegistry) {
+		this.coalesced = meterRegistry.counter("single.flight.coalesced", "name", name);
+	}
+
+	public V execute(String key, Supplier<V> supplier) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> existing = this.inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			this.coalesced.increment();
+			try {
+				return existing.join();
+			}
+			catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException runtimeException) {
+					throw runtimeException;
+				}
+				throw e;
+			}
+		}
+		try {
+			V value = supplier.get();
+			future.complete(value);
+			return value;
+		}
+		catch (RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			this.inFlight.remove(key, future);
+		}
+	}
+
+}
@@ -0,0 +1,41 @@
+package com.example.awsservicebroker.aws;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes the read-modify-write updates of one AWS resource, such as the tags of a
+ * role, within this process. Keys are hashed onto a fixed number of reentrant locks, so
+ * updates of different resources rarely wait for each other and no lock is ever
+ * allocated per key.
+ */
+public class StripedLocks {
+
+	private final ReentrantLock[] locks;
+
+	public StripedLocks(int stripes) {
+		this.locks = new ReentrantLock[stripes];
+		for (int i = 0; i < stripes; i++) {
+			this.locks[i] = new ReentrantLock();
+		}
+	}
+
+	public <T> T withLock(String key, Supplier<T> action) {
+		ReentrantLock lock = this.locks[Math.floorMod(key.hashCode(), this.locks.length)];
+		lock.lock();
+		try {
+			return action.get();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void runWithLock(String key, Runnable action) {
+		this.withLock(key, () -> {
+			action.run();
+			return null;
+		});
+	}
+
+}
@@ -1,8 +1,22 @@
 package com.example.awsservicebroker.aws.dynamodb;
 
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
 
 @ConfigurationProperties(prefix = "dynamodb")
-public record DynamodbProps(@DefaultValue("cf-") String tablePrefix) {
+public record DynamodbProps(@DefaultValue("cf-") String tablePrefix, @DefaultValue Teardown teardown) {
+
+	/**
+	 * @param concurrency maximum number of tables being deleted at once across all
+	 * instances. Keep it within the account's quota of concurrent control plane operations.
+	 * @param waitTimeout how long to wait for a table to be gone after deleting it
+	 * @param queueCapacity number of tables waiting to be deleted. Tables beyond it are
+	 * deleted on the thread of the deprovisioning.
+	 */
+	public record Teardown(@DefaultValue("10") int concurrency, @DefaultValue("10m") Duration waitTimeout,
+			@DefaultValue("100") int queueCapacity) {
+	}
+
 }
@@ -1,49 +1,174 @@
 package com.example.awsservicebroker.aws.dynamodb;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.awsservicebroker.aws.BoundedExecutors;
+import com.example.awsservicebroker.aws.ProgressReporter;
 import com.example.awsservicebroker.utils.StringUtils;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.retry.backoff.FixedDelayBackoffStrategy;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
-import software.amazon.awssdk.services.dynamodb.model.ListTablesRequest;
-import software.amazon.awssdk.services.dynamodb.model.ListTablesResponse;
+import software.amazon.awssdk.services.dynamodb.model.LimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ResourceInUseException;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbWaiter;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Component;
 
 @Component
-public class DynamodbService {
+public class DynamodbService implements DisposableBean {
+
+	private static final int MAX_ATTEMPTS = 8;
+
+	private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+
+	// the default waiter polls every 20 seconds
+	private static final Duration WAIT_INTERVAL = Duration.ofSeconds(2);
 
 	private final DynamoDbClient dynamoDbClient;
 
 	private final DynamodbProps props;
 
+	private final DynamoDbWaiter waiter;
+
+	private final ExecutorService teardownExecutor;
+
 	private final Logger logger = LoggerFactory.getLogger(DynamodbService.class);
 
-	public DynamodbService(DynamoDbClient dynamoDbClient, DynamodbProps props) {
+	public DynamodbService(DynamoDbClient dynamoDbClient, DynamodbProps props, MeterRegistry meterRegistry) {
 		this.dynamoDbClient = dynamoDbClient;
 		this.props = props;
+		Duration waitTimeout = props.teardown().waitTimeout();
+		this.waiter = DynamoDbWaiter.builder()
+			.client(dynamoDbClient)
+			.overrideConfiguration(configuration -> configuration.waitTimeout(waitTimeout)
+				.backoffStrategy(FixedDelayBackoffStrategy.create(WAIT_INTERVAL))
+				.maxAttempts((int) (waitTimeout.toMillis() / WAIT_INTERVAL.toMillis()) + 1))
+			.build();
+		// the pool size bounds the tables being deleted at once across all instances
+		this.teardownExecutor = BoundedExecutors.newExecutor("dynamodb-teardown", props.teardown().concurrency(),
+				props.teardown().queueCapacity(), true, meterRegistry);
+	}
+
+	@Override
+	public void destroy() {
+		this.teardownExecutor.shutdownNow();
+		this.waiter.close();
 	}
 
 	public String defaultTablePrefix(String instanceId) {
 		return this.props.tablePrefix() + StringUtils.removeHyphen(instanceId) + "-";
 	}
 
+	/**
+	 * Deletes the tables with the given prefix concurrently without waiting until they are
+	 * gone, so that a synchronous request does not wait for DynamoDB to finish deleting.
+	 */
 	public void deleteTableWithPrefix(String tablePrefix) {
-		String lastEvaluatedTableName = null;
-		do {
-			ListTablesRequest listTablesRequest = ListTablesRequest.builder()
-				.exclusiveStartTableName(lastEvaluatedTableName) // For pagination
-				.build();
-			ListTablesResponse listTablesResponse = this.dynamoDbClient.listTables(listTablesRequest);
-			for (String tableName : listTablesResponse.tableNames()) {
-				if (tableName.startsWith(tablePrefix)) {
-					logger.info("Deleting table {}", tableName);
-					dynamoDbClient.deleteTable(builder -> builder.tableName(tableName));
-					logger.info("Deleted table {}", tableName);
+		this.deleteTableWithPrefix(tablePrefix, false, ProgressReporter.NONE);
+	}
+
+	/**
+	 * Deletes the tables with the given prefix concurrently and waits until they are gone.
+	 */
+	public void deleteTableWithPrefix(String tablePrefix, ProgressReporter progressReporter) {
+		this.deleteTableWithPrefix(tablePrefix, true, progressReporter);
+	}
+
+	private void deleteTableWithPrefix(String tablePrefix, boolean waitUntilDeleted,
+			ProgressReporter progressReporter) {
+		List<String> tableNames = this.listTableNamesWithPrefix(tablePrefix);
+		if (tableNames.isEmpty()) {
+			return;
+		}
+		AtomicInteger deleted = new AtomicInteger();
+		progressReporter.report("Deleted 0 of %d tables".formatted(tableNames.size()));
+		List<CompletableFuture<Void>> futures = tableNames.stream()
+			.map(tableName -> CompletableFuture.runAsync(() -> {
+				this.deleteTable(tableName, waitUntilDeleted);
+				// reports in order, so that the last description has the final count
+				synchronized (deleted) {
+					progressReporter
+						.report("Deleted %d of %d tables".formatted(deleted.incrementAndGet(), tableNames.size()));
 				}
+			}, this.teardownExecutor))
+			.toList();
+		try {
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
 			}
-			lastEvaluatedTableName = listTablesResponse.lastEvaluatedTableName();
+			throw e;
 		}
-		while (lastEvaluatedTableName != null);
+	}
+
+	/**
+	 * Deletes the table, retrying while the account has too many control plane operations
+	 * in flight or the table is still being created or updated, and optionally waits until
+	 * it is gone.
+	 */
+	private void deleteTable(String tableName, boolean waitUntilDeleted) {
+		for (int attempt = 1;; attempt++) {
+			try {
+				logger.info("Deleting table {}", tableName);
+				this.dynamoDbClient.deleteTable(builder -> builder.tableName(tableName));
+				break;
+			}
+			catch (ResourceNotFoundException e) {
+				logger.info("Skipped deleting table {} as it has already gone", tableName);
+				return;
+			}
+			catch (LimitExceededException | ResourceInUseException e) {
+				if (attempt >= MAX_ATTEMPTS) {
+					throw e;
+				}
+				long backoff = INITIAL_BACKOFF.toMillis() << (attempt - 1);
+				logger.info("Retrying to delete table {} in {}ms: {}", tableName, backoff, e.getMessage());
+				try {
+					Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while deleting table " + tableName, ex);
+				}
+			}
+		}
+		if (!waitUntilDeleted) {
+			logger.info("Started deleting table {}", tableName);
+			return;
+		}
+		this.waiter.waitUntilTableNotExists(builder -> builder.tableName(tableName));
+		logger.info("Deleted table {}", tableName);
+	}
+
+	/**
+	 * Lists the tables whose names start with the given prefix. {@code ListTables} returns
+	 * names in ascending order after an exclusive start name, so the listing starts just
+	 * before the prefix and stops at the first name past it instead of covering the whole
+	 * account.
+	 */
+	private List<String> listTableNamesWithPrefix(String tablePrefix) {
+		// a start name must be a valid table name, which has at least 3 characters
+		String exclusiveStartTableName = tablePrefix.length() > 3
+				? tablePrefix.substring(0, tablePrefix.length() - 1) : null;
+		return this.dynamoDbClient
+			.listTablesPaginator(builder -> builder.exclusiveStartTableName(exclusiveStartTableName))
+			.tableNames()
+			.stream()
+			.dropWhile(tableName -> tableName.compareTo(tablePrefix) < 0)
+			.takeWhile(tableName -> tableName.startsWith(tablePrefix))
+			.toList();
 	}
 
 	public String buildTrustPolicyForTable(String tablePrefix) {
@@ -1,9 +1,76 @@
 package com.example.awsservicebroker.aws.iam;
 
+import java.time.Duration;
+
+import com.example.awsservicebroker.aws.LookupBackend;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
 
 @ConfigurationProperties(prefix = "iam")
 public record IamProps(String oidcProviderArn, @DefaultValue("cf") String roleNamePrefix,
-		@DefaultValue("/cf-role/") String rolePath) {
+		@DefaultValue("/cf-role/") String rolePath, @DefaultValue Index index, @DefaultValue TagFetch tagFetch,
+		@DefaultValue ScanBatching scanBatching, @DefaultValue("30s") Duration negativeCacheTtl,
+		@DefaultValue("scan") LookupBackend lookupBackend, @DefaultValue TaggingApi taggingApi,
+		@DefaultValue WriteBatching writeBatching, @DefaultValue RateLimit rateLimit) {
+
+	/**
+	 * @param authoritativeMisses whether a role missing from a complete index is taken as
+	 * absent without asking IAM. Roles created or tagged by another broker instance, such
+	 * as the other app of a blue-green push, are only indexed by the next refresh, and a
+	 * miss lets deprovisioning and unbinding skip their cleanup, so only enable it for a
+	 * single broker instance.
+	 */
+	public record Index(@DefaultValue("true") boolean enabled, @DefaultValue("10000") int maxRoles,
+			@DefaultValue("5m") Duration refreshInterval, @DefaultValue("false") boolean authoritativeMisses) {
+	}
+
+	/**
+	 * @param concurrency maximum number of concurrent {@code ListRoleTags} calls across all
+	 * role scans. Keep it within the account's IAM request quota. {@code 1} fetches tags
+	 * sequentially on the calling thread.
+	 * @param queueCapacity number of fetches waiting for a thread. Fetches beyond it run
+	 * on the scanning thread.
+	 */
+	public record TagFetch(@DefaultValue("4") int concurrency, @DefaultValue("1000") int queueCapacity) {
+	}
+
+	/**
+	 * @param enabled whether role scans requested concurrently share one sweep
+	 * @param window how long a sweep waits to collect other lookups before it starts
+	 * @param concurrency number of sweeps run at once
+	 * @param timeout how long a lookup waits for its sweep before it fails
+	 */
+	public record ScanBatching(@DefaultValue("true") boolean enabled, @DefaultValue("10ms") Duration window,
+			@DefaultValue("2") int concurrency, @DefaultValue("2m") Duration timeout) {
+	}
+
+	/**
+	 * @param enabled whether tag and inline policy writes to the same role requested
+	 * concurrently are merged into as few IAM calls as possible
+	 * @param window how long a write waits to collect other writes to the role
+	 * @param concurrency how many roles are written at once
+	 * @param timeout how long a write waits for its batch to be written
+	 */
+	public record WriteBatching(@DefaultValue("true") boolean enabled, @DefaultValue("10ms") Duration window,
+			@DefaultValue("4") int concurrency, @DefaultValue("1m") Duration timeout) {
+	}
+
+	/**
+	 * @param enabled whether IAM calls wait for a permit of the read or write budget
+	 * @param readsPerSecond budget of {@code Get*} and {@code List*} calls
+	 * @param writesPerSecond budget of the other calls
+	 * @param minPerSecond lowest rate that throttling can cut a budget down to
+	 */
+	public record RateLimit(@DefaultValue("true") boolean enabled, @DefaultValue("20") double readsPerSecond,
+			@DefaultValue("10") double writesPerSecond, @DefaultValue("0.5") double minPerSecond) {
+	}
+
+	/**
+	 * @param region region of the Resource Groups Tagging API endpoint. IAM is global and
+	 * its resources are reported in {@code us-east-1}.
+	 */
+	public record TaggingApi(@DefaultValue("us-east-1") String region) {
+	}
+
 }
@@ -0,0 +1,164 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.retry.conditions.RetryCondition;
+
+/**
+ * Keeps the IAM calls of this broker within the account's request quota. Every attempt,
+ * retries included, takes a permit from a token bucket for reads ({@code Get*} and
+ * {@code List*} operations) or for writes. A throttled attempt cuts the rate of its
+ * bucket by {@link #THROTTLE_FACTOR}, and successful calls raise it again step by step
+ * up to the configured rate, like the SDK's adaptive retry mode but with separate
+ * budgets, so that a burst of scans does not starve provisioning.
+ */
+public class IamRateLimiter implements ExecutionInterceptor {
+
+	static final double THROTTLE_FACTOR = 0.7;
+
+	private static final double RECOVERY_STEPS = 100;
+
+	private final TokenBucket reads;
+
+	private final TokenBucket writes;
+
+	public IamRateLimiter(IamProps.RateLimit rateLimit, MeterRegistry meterRegistry) {
+		this.reads = new TokenBucket("read", rateLimit.readsPerSecond(), rateLimit.minPerSecond(), meterRegistry);
+		this.writes = new TokenBucket("write", rateLimit.writesPerSecond(), rateLimit.minPerSecond(), meterRegistry);
+	}
+
+	@Override
+	public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+		this.bucket(executionAttributes).acquire();
+	}
+
+	@Override
+	public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+		this.bucket(executionAttributes).onSuccess();
+	}
+
+	/**
+	 * @return a retry condition that slows the bucket of a throttled attempt down and then
+	 * defers to {@code delegate}
+	 */
+	public RetryCondition throttlingAware(RetryCondition delegate) {
+		return context -> {
+			if (context.exception() instanceof SdkServiceException e && e.isThrottlingException()) {
+				this.bucket(context.executionAttributes()).onThrottled();
+			}
+			return delegate.shouldRetry(context);
+		};
+	}
+
+	private TokenBucket bucket(ExecutionAttributes executionAttributes) {
+		String operationName = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+		return operationName != null && (operationName.startsWith("Get") || operationName.startsWith("List"))
+				? this.reads : this.writes;
+	}
+
+	static class TokenBucket {
+
+		private final String name;
+
+		private final double maxRate;
+
+		private final double minRate;
+
+		private double rate;
+
+		private double permits;
+
+		private long lastRefill = System.nanoTime();
+
+		private final Timer waitTime;
+
+		private final Counter throttles;
+
+		TokenBucket(String name, double maxRate, double minRate, MeterRegistry meterRegistry) {
+			this.name = name;
+			this.maxRate = maxRate;
+			this.minRate = Math.min(minRate, maxRate);
+			this.rate = maxRate;
+			this.permits = maxRate;
+			this.waitTime = meterRegistry.timer("iam.rate.limit.wait", "budget", name);
+			this.throttles = meterRegistry.counter("iam.rate.limit.throttles", "budget", name);
+			Gauge.builder("iam.rate.limit.permits", this, TokenBucket::availablePermits)
+				.tag("budget", name)
+				.register(meterRegistry);
+			Gauge.builder("iam.rate.limit.rate", this, TokenBucket::currentRate)
+				.tag("budget", name)
+				.register(meterRegistry);
+		}
+
+		void acquire() {
+			long start = System.nanoTime();
+			try {
+				long waitNanos;
+				while ((waitNanos = this.tryAcquire()) > 0) {
+					TimeUnit.NANOSECONDS.sleep(waitNanos);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw AbortedException.builder()
+					.message("Interrupted while waiting for an IAM %s permit".formatted(this.name))
+					.cause(e)
+					.build();
+			}
+			finally {
+				this.waitTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		synchronized void onSuccess() {
+			this.rate = Math.min(this.maxRate, this.rate + this.maxRate / RECOVERY_STEPS);
+		}
+
+		synchronized void onThrottled() {
+			this.throttles.increment();
+			this.refill();
+			this.rate = Math.max(this.minRate, this.rate * THROTTLE_FACTOR);
+			this.permits = Math.min(this.permits, this.rate);
+		}
+
+		/**
+		 * @return {@code 0} if a permit was taken, or else how long to wait for one
+		 */
+		private synchronized long tryAcquire() {
+			this.refill();
+			if (this.permits >= 1) {
+				this.permits--;
+				return 0;
+			}
+			return (long) Math.ceil((1 - this.permits) / this.rate * 1e9);
+		}
+
+		private void refill() {
+			long now = System.nanoTime();
+			// the bucket holds up to one second of permits, and at least one
+			this.permits = Math.min(Math.max(this.rate, 1), this.permits + (now - this.lastRefill) / 1e9 * this.rate);
+			this.lastRefill = now;
+		}
+
+		synchronized double availablePermits() {
+			this.refill();
+			return this.permits;
+		}
+
+		synchronized double currentRate() {
+			return this.rate;
+		}
+
+	}
+
+}
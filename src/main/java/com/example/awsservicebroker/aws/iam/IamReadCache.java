@@ -0,0 +1,68 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Memoizes IAM reads within one broker operation, so that a role's tags or policies read
+ * several times while serving a single OSB request are fetched from IAM only once. The
+ * cache is bound to the current thread between {@link #open()} and {@link #close()};
+ * outside of that, reads are not cached. Writes made through {@link IamService}
+ * invalidate the affected entries.
+ */
+public class IamReadCache {
+
+	private static final ThreadLocal<IamReadCache> current = new ThreadLocal<>();
+
+	private final Map<String, Object> entries = new ConcurrentHashMap<>();
+
+	public static void open() {
+		current.set(new IamReadCache());
+	}
+
+	public static void close() {
+		current.remove();
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T get(String key, Supplier<T> loader) {
+		IamReadCache cache = current.get();
+		if (cache == null) {
+			return loader.get();
+		}
+		Object cached = cache.entries.get(key);
+		if (cached != null) {
+			return (T) cached;
+		}
+		T loaded = loader.get();
+		if (loaded != null) {
+			cache.entries.put(key, loaded);
+		}
+		return loaded;
+	}
+
+	static void put(String key, @Nullable Object value) {
+		IamReadCache cache = current.get();
+		if (cache != null && value != null) {
+			cache.entries.put(key, value);
+		}
+	}
+
+	static void invalidate(String key) {
+		IamReadCache cache = current.get();
+		if (cache != null) {
+			cache.entries.remove(key);
+		}
+	}
+
+	static void invalidateAll() {
+		IamReadCache cache = current.get();
+		if (cache != null) {
+			cache.entries.clear();
+		}
+	}
+
+}
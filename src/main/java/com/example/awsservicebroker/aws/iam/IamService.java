@@ -1,13 +1,32 @@
 package com.example.awsservicebroker.aws.iam;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.example.awsservicebroker.aws.BoundedExecutors;
 import com.example.awsservicebroker.aws.Instance;
+import com.example.awsservicebroker.aws.LookupBackend;
+import com.example.awsservicebroker.aws.NegativeLookupCache;
+import com.example.awsservicebroker.aws.SingleFlight;
+import com.example.awsservicebroker.aws.StripedLocks;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.iam.IamClient;
@@ -15,27 +34,100 @@ import software.amazon.awssdk.services.iam.model.AttachedPolicy;
 import software.amazon.awssdk.services.iam.model.CreateRoleRequest;
 import software.amazon.awssdk.services.iam.model.CreateRoleResponse;
 import software.amazon.awssdk.services.iam.model.DeleteRoleRequest;
-import software.amazon.awssdk.services.iam.model.ListAttachedRolePoliciesResponse;
-import software.amazon.awssdk.services.iam.model.ListRolePoliciesResponse;
+import software.amazon.awssdk.services.iam.model.ListRoleTagsResponse;
+import software.amazon.awssdk.services.iam.model.ListRolesResponse;
+import software.amazon.awssdk.services.iam.model.NoSuchEntityException;
 import software.amazon.awssdk.services.iam.model.Role;
 import software.amazon.awssdk.services.iam.model.Tag;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.ResourceGroupsTaggingApiClient;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 @Component
-public class IamService {
+public class IamService implements DisposableBean {
 
 	private final IamClient iamClient;
 
 	private final IamProps iamProps;
 
+	private final RoleTagIndex roleTagIndex;
+
+	private final RoleTagScanner roleTagScanner;
+
+	@Nullable
+	private final RoleScanScheduler roleScanScheduler;
+
+	@Nullable
+	private final TaggingApiRoleFinder taggingApiRoleFinder;
+
+	@Nullable
+	private final RoleWriteCoalescer roleWriteCoalescer;
+
+	private final NegativeLookupCache negativeLookupCache;
+
+	private final SingleFlight<Optional<Role>> singleFlight;
+
+	private final StripedLocks roleLocks = new StripedLocks(ROLE_LOCK_STRIPES);
+
+	@Nullable
+	private final ExecutorService tagFetchExecutor;
+
 	private final Logger logger = LoggerFactory.getLogger(IamService.class);
 
 	public static final String ROLE_NAME_DELIMITER = "_";
 
-	public IamService(IamClient iamClient, IamProps iamProps) {
+	private static final String ROLES_KEY_PREFIX = "roles:";
+
+	private static final String ROLE_KEY_PREFIX = "role:";
+
+	private static final String TAGS_KEY_PREFIX = "tags:";
+
+	private static final String POLICIES_KEY_PREFIX = "policies:";
+
+	private static final String TAG_KEY_KEY_PREFIX = "tag-key:";
+
+	private static final String INSTANCE_ID_KEY_PREFIX = "instance-id:";
+
+	private static final int ROLE_LOCK_STRIPES = 64;
+
+	public IamService(IamClient iamClient,
+			@Qualifier("iamTaggingApiClient") ResourceGroupsTaggingApiClient taggingApiClient, IamProps iamProps,
+			MeterRegistry meterRegistry) {
 		this.iamClient = iamClient;
 		this.iamProps = iamProps;
+		this.roleTagIndex = new RoleTagIndex(iamProps.index().maxRoles());
+		int concurrency = iamProps.tagFetch().concurrency();
+		this.tagFetchExecutor = concurrency > 1 ? BoundedExecutors.newExecutor("iam-tag-fetch", concurrency,
+				iamProps.tagFetch().queueCapacity(), true, meterRegistry) : null;
+		this.roleTagScanner = new RoleTagScanner(this::listRoleTagMap, this.tagFetchExecutor, meterRegistry);
+		this.roleScanScheduler = iamProps.scanBatching().enabled()
+				? new RoleScanScheduler(this.roleTagScanner, this::streamRolePages, this::onRoleTagsFetched,
+						iamProps.scanBatching().window(), iamProps.scanBatching().concurrency(), meterRegistry)
+				: null;
+		this.taggingApiRoleFinder = iamProps.lookupBackend() == LookupBackend.TAGGING_API
+				? new TaggingApiRoleFinder(taggingApiClient, iamProps.rolePath(), meterRegistry) : null;
+		this.roleWriteCoalescer = iamProps.writeBatching().enabled()
+				? new RoleWriteCoalescer(iamClient, iamProps.writeBatching().window(),
+						iamProps.writeBatching().concurrency(), meterRegistry)
+				: null;
+		this.negativeLookupCache = new NegativeLookupCache("iam", iamProps.negativeCacheTtl(), meterRegistry);
+		this.singleFlight = new SingleFlight<>("iam", meterRegistry);
+	}
+
+	@Override
+	public void destroy() {
+		if (this.roleScanScheduler != null) {
+			this.roleScanScheduler.shutdown();
+		}
+		if (this.roleWriteCoalescer != null) {
+			this.roleWriteCoalescer.shutdown();
+		}
+		if (this.tagFetchExecutor != null) {
+			this.tagFetchExecutor.shutdownNow();
+		}
 	}
 
 	String roleName(String instanceName, String orgName, String spaceName) {
@@ -58,64 +150,337 @@ public class IamService {
 		CreateRoleResponse createRoleResponse = this.iamClient.createRole(createRoleRequest);
 		Role role = createRoleResponse.role();
 		logger.info("Created roleName={} roleArn={}", role.roleName(), role.arn());
+		IamReadCache.invalidateAll();
+		this.negativeLookupCache.invalidate(INSTANCE_ID_KEY_PREFIX + instance.instanceId());
+		instance.toTags((key, value) -> key)
+			.forEach(key -> this.negativeLookupCache.invalidate(TAG_KEY_KEY_PREFIX + key));
+		if (this.iamProps.index().enabled()) {
+			this.roleTagIndex.put(role, instance.toTags(Map::entry)
+				.stream()
+				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+		}
 		return role;
 	}
 
 	public void attachInlinePolicyToRole(String roleName, String policyName, String policyDocument) {
-		logger.info("Attaching inline to role={} policy={} policy_document={}", roleName, policyName, policyDocument);
-		this.iamClient
-			.putRolePolicy(builder -> builder.roleName(roleName).policyName(policyName).policyDocument(policyDocument));
+		logger.info("Attaching inline to role={} policy={} policy_document={}", roleName, policyName,
+				policyDocument);
+		this.writeRole(roleName,
+				(coalescer, onWritten) -> coalescer.putPolicy(roleName, policyName, policyDocument, onWritten),
+				() -> this.iamClient.putRolePolicy(
+						builder -> builder.roleName(roleName).policyName(policyName).policyDocument(policyDocument)),
+				() -> IamReadCache.invalidate(POLICIES_KEY_PREFIX + roleName));
 		logger.info("Attached inline to role={} policy={}", roleName, policyName);
 	}
 
 	public void detachInlinePolicyFromRole(String roleName, String policyName) {
-		logger.info("Detaching inline policy={} from role={}", policyName, roleName);
-		this.iamClient.deleteRolePolicy(builder -> builder.roleName(roleName).policyName(policyName));
-		logger.info("Detached inline policy={} from role={}", policyName, roleName);
+		this.withRoleLock(roleName, () -> {
+			logger.info("Detaching inline policy={} from role={}", policyName, roleName);
+			this.iamClient.deleteRolePolicy(builder -> builder.roleName(roleName).policyName(policyName));
+			IamReadCache.invalidate(POLICIES_KEY_PREFIX + roleName);
+			logger.info("Detached inline policy={} from role={}", policyName, roleName);
+		});
 	}
 
-	public Optional<Role> findRoleByPolicyName(String policyName) {
-		return this.iamClient.listRoles(builder -> builder.pathPrefix(this.iamProps.rolePath()).maxItems(1000))
-			.roles()
+	/**
+	 * Creates a customer managed policy under the role path, where
+	 * {@link #detachPoliciesFromRole(String)} finds it when a role is deleted.
+	 * @return the ARN of the policy
+	 */
+	public String createManagedPolicy(String policyName, String policyDocument) {
+		logger.info("Creating managed policy={} policy_document={}", policyName, policyDocument);
+		String policyArn = this.iamClient
+			.createPolicy(builder -> builder.policyName(policyName)
+				.path(this.iamProps.rolePath())
+				.policyDocument(policyDocument))
+			.policy()
+			.arn();
+		logger.info("Created managed policy={} arn={}", policyName, policyArn);
+		return policyArn;
+	}
+
+	/**
+	 * Detaches the customer managed policy from every role and deletes it.
+	 */
+	public void deleteManagedPolicy(String policyArn) {
+		this.iamClient.listEntitiesForPolicyPaginator(builder -> builder.policyArn(policyArn))
+			.policyRoles()
+			.forEach(role -> this.detachManagedPolicyFromRole(role.roleName(), policyArn));
+		logger.info("Deleting managed policy arn={}", policyArn);
+		this.iamClient.deletePolicy(builder -> builder.policyArn(policyArn));
+		logger.info("Deleted managed policy arn={}", policyArn);
+	}
+
+	/**
+	 * @return the ARN of the customer managed policy created by
+	 * {@link #createManagedPolicy(String, String)} in the account of the role
+	 */
+	public String managedPolicyArn(Role role, String policyName) {
+		String[] roleArn = role.arn().split(":");
+		return "arn:%s:iam::%s:policy%s%s".formatted(roleArn[1], roleArn[4], this.iamProps.rolePath(), policyName);
+	}
+
+	public void attachManagedPolicyToRole(String roleName, String policyArn) {
+		this.withRoleLock(roleName, () -> {
+			logger.info("Attaching managed policy={} to role={}", policyArn, roleName);
+			this.iamClient.attachRolePolicy(builder -> builder.roleName(roleName).policyArn(policyArn));
+			logger.info("Attached managed policy={} to role={}", policyArn, roleName);
+		});
+	}
+
+	public void detachManagedPolicyFromRole(String roleName, String policyArn) {
+		this.withRoleLock(roleName, () -> {
+			logger.info("Detaching managed policy={} from role={}", policyArn, roleName);
+			this.iamClient.detachRolePolicy(builder -> builder.roleName(roleName).policyArn(policyArn));
+			logger.info("Detached managed policy={} from role={}", policyArn, roleName);
+		});
+	}
+
+	public boolean hasManagedPolicy(String roleName, String policyArn) {
+		return this.iamClient.listAttachedRolePoliciesPaginator(builder -> builder.roleName(roleName))
+			.attachedPolicies()
 			.stream()
-			.filter(role -> this.iamClient.listRolePolicies(builder -> builder.roleName(role.roleName()).maxItems(1000))
-				.policyNames()
-				.stream()
-				.anyMatch(policy -> Objects.equals(policy, policyName)))
+			.anyMatch(policy -> policy.policyArn().equals(policyArn));
+	}
+
+	public boolean hasInlinePolicy(String roleName, String policyName) {
+		return this.listRolePolicyNames(roleName).contains(policyName);
+	}
+
+	public Optional<Role> findRoleByPolicyName(String policyName) {
+		return this.streamRoles()
+			.filter(role -> this.listRolePolicyNames(role.roleName()).contains(policyName))
 			.findAny();
 	}
 
 	public Optional<Role> findRoleByRoleName(String roleName) {
-		return this.iamClient.listRoles(builder -> builder.pathPrefix(this.iamProps.rolePath()).maxItems(1000))
-			.roles()
-			.stream()
-			.filter(role -> Objects.equals(roleName, role.roleName()))
-			.findAny();
+		return this.singleFlight.execute(ROLE_KEY_PREFIX + roleName, () -> this.getRole(roleName));
+	}
+
+	private Optional<Role> getRole(String roleName) {
+		try {
+			Role role = IamReadCache.get(ROLE_KEY_PREFIX + roleName,
+					() -> this.iamClient.getRole(builder -> builder.roleName(roleName)).role());
+			if (role.path() == null || !role.path().startsWith(this.iamProps.rolePath())) {
+				return Optional.empty();
+			}
+			return Optional.of(role);
+		}
+		catch (NoSuchEntityException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Resolves the role created for the given instance. The role name is derived from the
+	 * instance, org and space names, so when they are known the role is fetched directly
+	 * and verified by its {@code instance_id} tag. Otherwise, or if the verification fails,
+	 * this falls back to {@link #findRoleByInstanceId(String)}.
+	 */
+	public Optional<Role> findRoleByInstanceId(String instanceId, @Nullable String instanceName,
+			@Nullable String orgName, @Nullable String spaceName) {
+		if (instanceName != null && orgName != null && spaceName != null) {
+			Optional<Role> role = this.findRoleByRoleName(this.roleName(instanceName, orgName, spaceName))
+				.filter(candidate -> Objects.equals(this.fetchRoleTagMap(candidate).get("instance_id"), instanceId));
+			if (role.isPresent()) {
+				return role;
+			}
+		}
+		return this.findRoleByInstanceId(instanceId);
+	}
+
+	public Optional<Role> findRoleByTagKey(String tagKey) {
+		return this.findAbsentAware(TAG_KEY_KEY_PREFIX + tagKey,
+				() -> this.findRole(index -> index.findByTagKey(tagKey), Map.of(tagKey, List.of()),
+						tagMap -> tagMap.containsKey(tagKey)));
 	}
 
 	public Optional<Role> findRoleByTags(Predicate<Map<String, String>> predicate) {
-		return this.iamClient.listRoles(builder -> builder.pathPrefix(this.iamProps.rolePath()).maxItems(1000))
-			.roles()
-			.stream()
-			.filter(role -> {
-				Map<String, String> tagMap = this.iamClient
-					.listRoleTags(builder -> builder.roleName(role.roleName()).maxItems(1000))
-					.tags()
-					.stream()
-					.collect(Collectors.toMap(Tag::key, Tag::value));
-				return predicate.test(tagMap);
-			})
-			.findAny();
+		return this.findRole(index -> index.find(predicate), null, predicate);
 	}
 
 	public Optional<Role> findRoleByInstanceId(String instanceId) {
-		return this.findRoleByTags(
-				tagMap -> tagMap.containsKey("instance_id") && tagMap.get("instance_id").equals(instanceId));
+		return this.findAbsentAware(INSTANCE_ID_KEY_PREFIX + instanceId,
+				() -> this.findRole(index -> index.findByTag("instance_id", instanceId),
+						Map.of("instance_id", List.of(instanceId)),
+						tagMap -> tagMap.containsKey("instance_id") && tagMap.get("instance_id").equals(instanceId)));
 	}
 
 	public Optional<Role> findRoleByOrgNameAndSpaceName(String orgName, String spaceName) {
-		return this.findRoleByTags(tagMap -> Objects.equals(tagMap.get("org_name"), orgName)
-				&& Objects.equals(tagMap.get("space_name"), spaceName));
+		Predicate<Map<String, String>> predicate = tagMap -> Objects.equals(tagMap.get("org_name"), orgName)
+				&& Objects.equals(tagMap.get("space_name"), spaceName);
+		Map<String, List<String>> tagFilters = orgName != null && spaceName != null
+				? Map.of("org_name", List.of(orgName), "space_name", List.of(spaceName)) : null;
+		return this.findRole(index -> index.find(predicate), tagFilters, predicate);
+	}
+
+	/**
+	 * Runs a role lookup that is skipped while the key is known to be absent and that is
+	 * shared with concurrent callers looking up the same key.
+	 */
+	private Optional<Role> findAbsentAware(String key, Supplier<Optional<Role>> lookup) {
+		if (this.negativeLookupCache.isAbsent(key)) {
+			return Optional.empty();
+		}
+		return this.singleFlight.execute(key, () -> {
+			long generation = this.negativeLookupCache.generation(key);
+			Optional<Role> role = lookup.get();
+			if (role.isEmpty()) {
+				this.negativeLookupCache.markAbsent(key, generation);
+			}
+			return role;
+		});
+	}
+
+	/**
+	 * Looks up the role in the tag index first. The index is authoritative for misses only
+	 * when it holds every role under the role path and {@code iam.index.authoritative-misses}
+	 * is set, otherwise the Tagging API is asked for the {@code tagFilters}, if configured,
+	 * and the roles are scanned as a last resort.
+	 */
+	private Optional<Role> findRole(Function<RoleTagIndex, Optional<Role>> indexLookup,
+			@Nullable Map<String, List<String>> tagFilters, Predicate<Map<String, String>> predicate) {
+		if (this.iamProps.index().enabled()) {
+			Optional<Role> indexed = indexLookup.apply(this.roleTagIndex);
+			boolean authoritative = this.iamProps.index().authoritativeMisses() && this.roleTagIndex.isComplete();
+			if (indexed.isPresent() || authoritative) {
+				return indexed;
+			}
+		}
+		if (this.taggingApiRoleFinder != null && tagFilters != null) {
+			Optional<Role> tagged = this.findRoleWithTaggingApi(tagFilters, predicate);
+			if (tagged.isPresent()) {
+				return tagged;
+			}
+		}
+		return this.scanRoleByTags(predicate);
+	}
+
+	/**
+	 * The Tagging API is eventually consistent, so its answer is checked against the role's
+	 * current tags, and a miss or failure is left to the scan.
+	 */
+	private Optional<Role> findRoleWithTaggingApi(Map<String, List<String>> tagFilters,
+			Predicate<Map<String, String>> predicate) {
+		try {
+			return this.taggingApiRoleFinder.findRole(tagFilters)
+				.flatMap(found -> this.findRoleByRoleName(found.roleName()))
+				.filter(role -> predicate.test(this.fetchRoleTagMap(role)));
+		}
+		catch (RuntimeException e) {
+			logger.warn("Failed to look up role with the Tagging API, falling back to a scan: {}", e.getMessage());
+			return Optional.empty();
+		}
+	}
+
+	private Optional<Role> scanRoleByTags(Predicate<Map<String, String>> predicate) {
+		if (this.roleScanScheduler == null) {
+			return this.roleTagScanner.scan(this.streamRolePages(), predicate, this::onRoleTagsFetched);
+		}
+		try {
+			Duration timeout = this.iamProps.scanBatching().timeout();
+			Optional<RoleTagIndex.Entry> found = this.roleScanScheduler.submit(predicate)
+				.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+				.join();
+			// the sweep runs on another thread, so cache the tags in this request's scope
+			found.ifPresent(entry -> IamReadCache.put(TAGS_KEY_PREFIX + entry.role().roleName(), entry.tags()));
+			return found.map(RoleTagIndex.Entry::role);
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (e.getCause() instanceof TimeoutException) {
+				throw new IllegalStateException("Role scan did not finish in time", e.getCause());
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the tags of a role fetched with {@code GetRole}, which includes them, or lists
+	 * them if it did not.
+	 */
+	private Map<String, String> fetchRoleTagMap(Role role) {
+		Map<String, String> tagMap = role.hasTags()
+				? role.tags().stream().collect(Collectors.toMap(Tag::key, Tag::value))
+				: this.listRoleTagMap(role.roleName());
+		this.onRoleTagsFetched(role, tagMap);
+		return tagMap;
+	}
+
+	private void onRoleTagsFetched(Role role, Map<String, String> tagMap) {
+		IamReadCache.put(TAGS_KEY_PREFIX + role.roleName(), tagMap);
+		if (this.iamProps.index().enabled()) {
+			this.roleTagIndex.put(role, tagMap);
+		}
+	}
+
+	/**
+	 * Streams the roles under the role path. Pages are fetched lazily, so a short-circuiting
+	 * operation such as {@code findAny} stops listing as soon as it matches.
+	 */
+	private Stream<Role> streamRoles() {
+		return this.streamRolePages().flatMap(List::stream);
+	}
+
+	private Stream<List<Role>> streamRolePages() {
+		return Stream
+			.iterate(this.listRolesPage(null), Objects::nonNull,
+					page -> Boolean.TRUE.equals(page.isTruncated()) ? this.listRolesPage(page.marker()) : null)
+			.map(ListRolesResponse::roles);
+	}
+
+	private ListRolesResponse listRolesPage(@Nullable String marker) {
+		return IamReadCache.get(ROLES_KEY_PREFIX + marker, () -> this.iamClient
+			.listRoles(builder -> builder.pathPrefix(this.iamProps.rolePath()).marker(marker)));
+	}
+
+	private Map<String, String> listRoleTagMap(String roleName) {
+		return IamReadCache.get(TAGS_KEY_PREFIX + roleName, () -> {
+			Map<String, String> tagMap = new LinkedHashMap<>();
+			String marker = null;
+			ListRoleTagsResponse response;
+			do {
+				String markerToUse = marker;
+				response = this.iamClient.listRoleTags(builder -> builder.roleName(roleName).marker(markerToUse));
+				response.tags().forEach(tag -> tagMap.put(tag.key(), tag.value()));
+				marker = response.marker();
+			}
+			while (Boolean.TRUE.equals(response.isTruncated()));
+			return Collections.unmodifiableMap(tagMap);
+		});
+	}
+
+	private List<String> listRolePolicyNames(String roleName) {
+		return IamReadCache.get(POLICIES_KEY_PREFIX + roleName,
+				() -> this.iamClient.listRolePoliciesPaginator(builder -> builder.roleName(roleName))
+					.policyNames()
+					.stream()
+					.toList());
+	}
+
+	/**
+	 * Rebuilds the role tag index from IAM to fix drift caused by changes made outside of
+	 * this broker.
+	 */
+	public void refreshRoleTagIndex() {
+		if (!this.iamProps.index().enabled()) {
+			return;
+		}
+		this.roleTagIndex.beginRefresh();
+		try {
+			List<RoleTagIndex.Entry> snapshot = Collections.synchronizedList(new ArrayList<>());
+			this.roleTagScanner.scan(this.streamRolePages(), tagMap -> false,
+					(role, tagMap) -> snapshot.add(new RoleTagIndex.Entry(role, tagMap)));
+			this.roleTagIndex.completeRefresh(snapshot);
+			this.negativeLookupCache.invalidateAll();
+			logger.info("Refreshed role tag index size={}", this.roleTagIndex.size());
+		}
+		catch (RuntimeException e) {
+			this.roleTagIndex.abortRefresh();
+			logger.warn("Failed to refresh role tag index", e);
+		}
 	}
 
 	public void deleteIamRoleByInstanceId(String instanceId) {
@@ -134,12 +499,23 @@ public class IamService {
 		logger.info("Deleting roleName={}", roleName);
 		this.iamClient.deleteRole(deleteRoleRequest);
 		logger.info("Deleted roleName={}", roleName);
+		IamReadCache.invalidateAll();
+		if (this.iamProps.index().enabled()) {
+			this.roleTagIndex.remove(roleName);
+		}
 	}
 
+	/**
+	 * Detaches the customer managed policies under the role path, which include those
+	 * created for instances by {@link #createManagedPolicy(String, String)}.
+	 */
 	void detachPoliciesFromRole(String roleName) {
-		ListAttachedRolePoliciesResponse listAttachedPoliciesResponse = this.iamClient.listAttachedRolePolicies(
-				builder -> builder.pathPrefix(this.iamProps.rolePath()).roleName(roleName).build());
-		List<AttachedPolicy> attachedPolicies = listAttachedPoliciesResponse.attachedPolicies();
+		List<AttachedPolicy> attachedPolicies = this.iamClient
+			.listAttachedRolePoliciesPaginator(
+					builder -> builder.pathPrefix(this.iamProps.rolePath()).roleName(roleName).build())
+			.attachedPolicies()
+			.stream()
+			.toList();
 		for (AttachedPolicy policy : attachedPolicies) {
 			logger.info("Detaching policy={} roleName={}", policy.policyName(), roleName);
 			this.iamClient
@@ -149,10 +525,7 @@ public class IamService {
 	}
 
 	void deleteInlinePoliciesFromRole(String roleName) {
-		ListRolePoliciesResponse listRolePoliciesResponse = this.iamClient
-			.listRolePolicies(builder -> builder.roleName(roleName).build());
-		List<String> inlinePolicies = listRolePoliciesResponse.policyNames();
-
+		List<String> inlinePolicies = this.listRolePolicyNames(roleName);
 		for (String policyName : inlinePolicies) {
 			logger.info("Deleting inline policy={} roleName={}", policyName, roleName);
 			this.iamClient.deleteRolePolicy(builder -> builder.roleName(roleName).policyName(policyName).build());
@@ -161,21 +534,102 @@ public class IamService {
 	}
 
 	public List<Tag> listRoleTags(String roleName) {
-		return this.iamClient.listRoleTags(builder -> builder.roleName(roleName).maxItems(1000)).tags();
+		return this.listRoleTagMap(roleName)
+			.entrySet()
+			.stream()
+			.map(entry -> Tag.builder().key(entry.getKey()).value(entry.getValue()).build())
+			.toList();
 	}
 
 	public void addRoleTags(String roleName, List<Tag> tags) {
 		logger.info("Adding tags to role roleName={} tags={}", roleName, tags);
-		this.iamClient.tagRole(builder -> builder.roleName(roleName).tags(tags).build());
+		this.writeRole(roleName, (coalescer, onWritten) -> coalescer.tag(roleName, tags, onWritten),
+				() -> this.iamClient.tagRole(builder -> builder.roleName(roleName).tags(tags).build()), () -> {
+					this.invalidateRoleTags(roleName);
+					tags.forEach(tag -> this.negativeLookupCache.invalidate(TAG_KEY_KEY_PREFIX + tag.key()));
+					if (this.iamProps.index().enabled() && !this.roleTagIndex.addTags(roleName,
+							tags.stream().collect(Collectors.toMap(Tag::key, Tag::value)))) {
+						this.indexRole(roleName);
+					}
+				});
 		logger.info("Added tags to role roleName={} tags={}", roleName, tags);
 	}
 
 	public void removeRoleTags(String roleName, List<String> tagKeys) {
 		logger.info("Removing tags to role roleName={} tagKeys={}", roleName, tagKeys);
-		this.iamClient.untagRole(builder -> builder.roleName(roleName).tagKeys(tagKeys));
+		this.writeRole(roleName, (coalescer, onWritten) -> coalescer.untag(roleName, tagKeys, onWritten),
+				() -> this.iamClient.untagRole(builder -> builder.roleName(roleName).tagKeys(tagKeys)), () -> {
+					this.invalidateRoleTags(roleName);
+					if (this.iamProps.index().enabled() && !this.roleTagIndex.removeTags(roleName, tagKeys)) {
+						this.indexRole(roleName);
+					}
+				});
 		logger.info("Removed tags to role roleName={} tagKeys={}", roleName, tagKeys);
 	}
 
+	/**
+	 * Serializes the writes to one role, which several instances may share, while writes
+	 * to different roles run in parallel.
+	 */
+	private void withRoleLock(String roleName, Runnable update) {
+		this.roleLocks.runWithLock(roleName, update);
+	}
+
+	/**
+	 * Writes to the role through the {@link RoleWriteCoalescer} if write batching is
+	 * enabled, or else under the role lock. Either way the caches are updated in the same
+	 * order as the writes reach IAM. A batched write that times out may still be written
+	 * later, so the index stops trusting its misses until the next refresh.
+	 * @param onWritten updates the caches once the write has succeeded
+	 */
+	private void writeRole(String roleName,
+			BiFunction<RoleWriteCoalescer, Runnable, CompletableFuture<Void>> coalesced, Runnable write,
+			Runnable onWritten) {
+		if (this.roleWriteCoalescer == null) {
+			this.withRoleLock(roleName, () -> {
+				write.run();
+				onWritten.run();
+			});
+			return;
+		}
+		try {
+			Duration timeout = this.iamProps.writeBatching().timeout();
+			coalesced.apply(this.roleWriteCoalescer, onWritten)
+				.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+				.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (e.getCause() instanceof TimeoutException) {
+				this.invalidateRoleTags(roleName);
+				this.roleTagIndex.markIncomplete();
+				throw new IllegalStateException("Role write did not finish in time", e.getCause());
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Indexes a role that was written before it was indexed, such as one created by another
+	 * broker instance, or else stops trusting the index's misses.
+	 */
+	private void indexRole(String roleName) {
+		try {
+			this.findRoleByRoleName(roleName).ifPresent(this::fetchRoleTagMap);
+		}
+		catch (RuntimeException e) {
+			logger.warn("Failed to index roleName={}: {}", roleName, e.getMessage());
+			this.roleTagIndex.markIncomplete();
+		}
+	}
+
+	private void invalidateRoleTags(String roleName) {
+		IamReadCache.invalidate(TAGS_KEY_PREFIX + roleName);
+		IamReadCache.invalidate(ROLE_KEY_PREFIX + roleName);
+	}
+
 	private static String buildAssumeRolePolicyDocument(String oidcProviderArn, String oidcProviderDomain,
 			String orgGuid, String spaceGuid) {
 		return """
@@ -0,0 +1,135 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.services.iam.model.Role;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Batches role scans requested by concurrent lookups. Predicates submitted within a short
+ * window are evaluated together in one sweep over the roles, and each caller is completed
+ * on the first role that matches its predicate. The sweep stops as soon as every caller
+ * has been completed, so N concurrent lookups cost at most one full scan. Up to
+ * {@code concurrency} sweeps run at once, so lookups submitted during a long sweep do not
+ * wait for it to end. Lookups still waiting on {@link #shutdown()} fail.
+ */
+class RoleScanScheduler {
+
+	private final RoleTagScanner scanner;
+
+	private final Supplier<Stream<List<Role>>> pages;
+
+	private final BiConsumer<Role, Map<String, String>> listener;
+
+	private final Duration window;
+
+	private final ScheduledExecutorService executor;
+
+	private final List<Waiter> pending = new ArrayList<>();
+
+	private final Set<Waiter> sweeping = ConcurrentHashMap.newKeySet();
+
+	private boolean scheduled = false;
+
+	private boolean shutdown = false;
+
+	private final DistributionSummary batchSize;
+
+	private final Counter sweeps;
+
+	RoleScanScheduler(RoleTagScanner scanner, Supplier<Stream<List<Role>>> pages,
+			BiConsumer<Role, Map<String, String>> listener, Duration window, int concurrency,
+			MeterRegistry meterRegistry) {
+		this.executor = Executors.newScheduledThreadPool(concurrency, new CustomizableThreadFactory("iam-role-scan-"));
+		this.scanner = scanner;
+		this.pages = pages;
+		this.listener = listener;
+		this.window = window;
+		this.batchSize = meterRegistry.summary("iam.role.scan.batch.size");
+		this.sweeps = meterRegistry.counter("iam.role.scan.sweeps");
+	}
+
+	CompletableFuture<Optional<RoleTagIndex.Entry>> submit(Predicate<Map<String, String>> predicate) {
+		Waiter waiter = new Waiter(predicate, new CompletableFuture<>());
+		synchronized (this.pending) {
+			if (this.shutdown) {
+				waiter.future().completeExceptionally(new IllegalStateException("Role scans have been shut down"));
+				return waiter.future();
+			}
+			this.pending.add(waiter);
+			if (!this.scheduled) {
+				this.scheduled = true;
+				this.executor.schedule(this::sweep, this.window.toMillis(), TimeUnit.MILLISECONDS);
+			}
+		}
+		return waiter.future();
+	}
+
+	void shutdown() {
+		List<Waiter> waiters;
+		synchronized (this.pending) {
+			this.shutdown = true;
+			waiters = new ArrayList<>(this.pending);
+			this.pending.clear();
+		}
+		waiters.addAll(this.sweeping);
+		this.executor.shutdownNow();
+		IllegalStateException e = new IllegalStateException("Role scans have been shut down");
+		waiters.forEach(waiter -> waiter.future().completeExceptionally(e));
+	}
+
+	private void sweep() {
+		List<Waiter> waiters;
+		synchronized (this.pending) {
+			waiters = new ArrayList<>(this.pending);
+			this.pending.clear();
+			this.scheduled = false;
+		}
+		this.sweeps.increment();
+		this.batchSize.record(waiters.size());
+		this.sweeping.addAll(waiters);
+		List<Waiter> remaining = new ArrayList<>(waiters);
+		try {
+			this.scanner.scan(this.pages.get(), tagMap -> remaining.isEmpty(), (role, tagMap) -> {
+				this.listener.accept(role, tagMap);
+				remaining.removeIf(waiter -> {
+					if (waiter.predicate().test(tagMap)) {
+						waiter.future().complete(Optional.of(new RoleTagIndex.Entry(role, tagMap)));
+						return true;
+					}
+					return false;
+				});
+			});
+			remaining.forEach(waiter -> waiter.future().complete(Optional.empty()));
+		}
+		catch (RuntimeException e) {
+			remaining.forEach(waiter -> waiter.future().completeExceptionally(e));
+		}
+		finally {
+			this.sweeping.removeAll(waiters);
+		}
+	}
+
+	private record Waiter(Predicate<Map<String, String>> predicate,
+			CompletableFuture<Optional<RoleTagIndex.Entry>> future) {
+	}
+
+}
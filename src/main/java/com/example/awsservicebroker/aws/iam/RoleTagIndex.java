@@ -0,0 +1,237 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import software.amazon.awssdk.services.iam.model.Role;
+
+/**
+ * In-memory inverted index from role tags to roles under {@code iam.role-path}. Lookups
+ * by tag key or tag key/value are answered without calling IAM. The index holds at most
+ * {@code maxRoles} roles and evicts the least recently used one beyond that, in which case
+ * it is no longer {@link #isComplete() complete} until the next full refresh. A write to a
+ * role that is not indexed is not applied, and the caller has to {@link #put} the role or
+ * {@link #markIncomplete()} the index.
+ */
+class RoleTagIndex {
+
+	private final int maxRoles;
+
+	private final LinkedHashMap<String, Entry> entries;
+
+	private final Map<String, Map<String, Set<String>>> roleNamesByTag = new HashMap<>();
+
+	private final Set<String> modifiedDuringRefresh = new HashSet<>();
+
+	private boolean refreshing = false;
+
+	private boolean complete = false;
+
+	private boolean incompleteDuringRefresh = false;
+
+	RoleTagIndex(int maxRoles) {
+		this.maxRoles = maxRoles;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > RoleTagIndex.this.maxRoles) {
+					unindex(eldest.getValue());
+					RoleTagIndex.this.complete = false;
+					// a role written during the refresh may be evicted before it is
+					// merged with the snapshot
+					RoleTagIndex.this.incompleteDuringRefresh |= RoleTagIndex.this.refreshing;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	record Entry(Role role, Map<String, String> tags) {
+	}
+
+	/**
+	 * @return {@code true} if every role under the role path is indexed, so a miss means
+	 * the role does not exist
+	 */
+	synchronized boolean isComplete() {
+		return this.complete;
+	}
+
+	synchronized int size() {
+		return this.entries.size();
+	}
+
+	synchronized Optional<Role> findByTagKey(String tagKey) {
+		Map<String, Set<String>> roleNamesByValue = this.roleNamesByTag.get(tagKey);
+		if (roleNamesByValue == null) {
+			return Optional.empty();
+		}
+		return roleNamesByValue.values().stream().flatMap(Collection::stream).findAny().map(this::roleOf);
+	}
+
+	synchronized Optional<Role> findByTag(String tagKey, String tagValue) {
+		Map<String, Set<String>> roleNamesByValue = this.roleNamesByTag.get(tagKey);
+		if (roleNamesByValue == null) {
+			return Optional.empty();
+		}
+		Set<String> roleNames = roleNamesByValue.get(tagValue);
+		if (roleNames == null) {
+			return Optional.empty();
+		}
+		return roleNames.stream().findAny().map(this::roleOf);
+	}
+
+	synchronized Optional<Role> find(Predicate<Map<String, String>> predicate) {
+		Optional<String> roleName = this.entries.values()
+			.stream()
+			.filter(entry -> predicate.test(entry.tags()))
+			.findAny()
+			.map(entry -> entry.role().roleName());
+		return roleName.map(this::roleOf);
+	}
+
+	synchronized void put(Role role, Map<String, String> tags) {
+		this.markModified(role.roleName());
+		Entry previous = this.entries.remove(role.roleName());
+		if (previous != null) {
+			unindex(previous);
+		}
+		Entry entry = new Entry(role, Map.copyOf(tags));
+		this.entries.put(role.roleName(), entry);
+		index(entry);
+	}
+
+	/**
+	 * @return {@code false} if the role is not indexed
+	 */
+	synchronized boolean addTags(String roleName, Map<String, String> tags) {
+		this.markModified(roleName);
+		Entry entry = this.entries.get(roleName);
+		if (entry == null) {
+			return false;
+		}
+		Map<String, String> merged = new HashMap<>(entry.tags());
+		merged.putAll(tags);
+		this.put(entry.role(), merged);
+		return true;
+	}
+
+	/**
+	 * @return {@code false} if the role is not indexed
+	 */
+	synchronized boolean removeTags(String roleName, Collection<String> tagKeys) {
+		this.markModified(roleName);
+		Entry entry = this.entries.get(roleName);
+		if (entry == null) {
+			return false;
+		}
+		Map<String, String> remaining = new HashMap<>(entry.tags());
+		remaining.keySet().removeAll(tagKeys);
+		this.put(entry.role(), remaining);
+		return true;
+	}
+
+	/**
+	 * Stops treating misses as authoritative until the next full refresh, for instance
+	 * after a write to a role that could not be indexed.
+	 */
+	synchronized void markIncomplete() {
+		this.complete = false;
+		this.incompleteDuringRefresh = this.refreshing;
+	}
+
+	synchronized void remove(String roleName) {
+		this.markModified(roleName);
+		Entry entry = this.entries.remove(roleName);
+		if (entry != null) {
+			unindex(entry);
+		}
+	}
+
+	/**
+	 * Starts a full refresh. Roles written through the index until
+	 * {@link #completeRefresh(Collection)} keep their current entry instead of the
+	 * snapshot, which may have been read before the write.
+	 */
+	synchronized void beginRefresh() {
+		this.refreshing = true;
+		this.incompleteDuringRefresh = false;
+		this.modifiedDuringRefresh.clear();
+	}
+
+	synchronized void completeRefresh(Collection<Entry> snapshot) {
+		Map<String, Entry> current = new HashMap<>(this.entries);
+		this.entries.clear();
+		this.roleNamesByTag.clear();
+		this.complete = !this.incompleteDuringRefresh;
+		for (Entry entry : snapshot) {
+			String roleName = entry.role().roleName();
+			Entry latest = this.modifiedDuringRefresh.contains(roleName) ? current.get(roleName) : entry;
+			if (latest != null) {
+				this.entries.put(roleName, latest);
+				index(latest);
+			}
+		}
+		for (String roleName : this.modifiedDuringRefresh) {
+			Entry created = current.get(roleName);
+			if (created != null && !this.entries.containsKey(roleName)) {
+				this.entries.put(roleName, created);
+				index(created);
+			}
+		}
+		this.refreshing = false;
+		this.incompleteDuringRefresh = false;
+		this.modifiedDuringRefresh.clear();
+	}
+
+	synchronized void abortRefresh() {
+		this.refreshing = false;
+		this.incompleteDuringRefresh = false;
+		this.modifiedDuringRefresh.clear();
+	}
+
+	private void markModified(String roleName) {
+		if (this.refreshing) {
+			this.modifiedDuringRefresh.add(roleName);
+		}
+	}
+
+	private Role roleOf(String roleName) {
+		// touch the entry so that it is the most recently used one
+		return this.entries.get(roleName).role();
+	}
+
+	private void index(Entry entry) {
+		entry.tags()
+			.forEach((key, value) -> this.roleNamesByTag.computeIfAbsent(key, k -> new HashMap<>())
+				.computeIfAbsent(value, v -> new HashSet<>())
+				.add(entry.role().roleName()));
+	}
+
+	private void unindex(Entry entry) {
+		entry.tags().forEach((key, value) -> {
+			Map<String, Set<String>> roleNamesByValue = this.roleNamesByTag.get(key);
+			if (roleNamesByValue == null) {
+				return;
+			}
+			Set<String> roleNames = roleNamesByValue.get(value);
+			if (roleNames != null) {
+				roleNames.remove(entry.role().roleName());
+				if (roleNames.isEmpty()) {
+					roleNamesByValue.remove(value);
+				}
+			}
+			if (roleNamesByValue.isEmpty()) {
+				this.roleNamesByTag.remove(key);
+			}
+		});
+	}
+
+}
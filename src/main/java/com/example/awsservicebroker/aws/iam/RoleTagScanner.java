@@ -0,0 +1,161 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.services.iam.model.Role;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Scans pages of roles for the first one whose tags match a predicate. When an executor
+ * is given, the tags of the roles in a page are fetched concurrently on it, so the
+ * executor's pool size bounds the number of in-flight {@code ListRoleTags} calls across
+ * all scans. Outstanding fetches are cancelled as soon as a match is found.
+ */
+class RoleTagScanner {
+
+	private final Function<String, Map<String, String>> tagReader;
+
+	@Nullable
+	private final ExecutorService executor;
+
+	private final AtomicInteger active = new AtomicInteger();
+
+	private final Counter calls;
+
+	private final Counter wasted;
+
+	RoleTagScanner(Function<String, Map<String, String>> tagReader, @Nullable ExecutorService executor,
+			MeterRegistry meterRegistry) {
+		this.tagReader = tagReader;
+		this.executor = executor;
+		meterRegistry.gauge("iam.tag.fetch.active", this.active);
+		this.calls = meterRegistry.counter("iam.tag.fetch.calls");
+		this.wasted = meterRegistry.counter("iam.tag.fetch.wasted");
+	}
+
+	Optional<Role> scan(Stream<List<Role>> pages, Predicate<Map<String, String>> predicate,
+			BiConsumer<Role, Map<String, String>> listener) {
+		Iterator<List<Role>> iterator = pages.iterator();
+		while (iterator.hasNext()) {
+			List<Role> page = iterator.next();
+			Optional<Role> found = (this.executor == null || page.size() <= 1)
+					? this.scanSequentially(page, predicate, listener)
+					: this.scanConcurrently(page, predicate, listener);
+			if (found.isPresent()) {
+				return found;
+			}
+		}
+		return Optional.empty();
+	}
+
+	private Optional<Role> scanSequentially(List<Role> roles, Predicate<Map<String, String>> predicate,
+			BiConsumer<Role, Map<String, String>> listener) {
+		for (Role role : roles) {
+			Map<String, String> tags = this.fetch(role);
+			listener.accept(role, tags);
+			if (predicate.test(tags)) {
+				return Optional.of(role);
+			}
+		}
+		return Optional.empty();
+	}
+
+	private Optional<Role> scanConcurrently(List<Role> roles, Predicate<Map<String, String>> predicate,
+			BiConsumer<Role, Map<String, String>> listener) {
+		CompletionService<Fetched> completionService = new ExecutorCompletionService<>(this.executor);
+		List<FetchTask> tasks = new ArrayList<>(roles.size());
+		List<Future<Fetched>> futures = new ArrayList<>(roles.size());
+		for (Role role : roles) {
+			FetchTask task = new FetchTask(tasks.size(), role);
+			tasks.add(task);
+			futures.add(completionService.submit(task));
+		}
+		boolean[] consumed = new boolean[roles.size()];
+		try {
+			for (int i = 0; i < roles.size(); i++) {
+				Fetched fetched = completionService.take().get();
+				consumed[fetched.index()] = true;
+				listener.accept(fetched.role(), fetched.tags());
+				if (predicate.test(fetched.tags())) {
+					return Optional.of(fetched.role());
+				}
+			}
+			return Optional.empty();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while fetching role tags", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			for (int i = 0; i < futures.size(); i++) {
+				if (!consumed[i]) {
+					futures.get(i).cancel(true);
+					if (tasks.get(i).started.get()) {
+						this.wasted.increment();
+					}
+				}
+			}
+		}
+	}
+
+	private Map<String, String> fetch(Role role) {
+		this.calls.increment();
+		this.active.incrementAndGet();
+		try {
+			return this.tagReader.apply(role.roleName());
+		}
+		finally {
+			this.active.decrementAndGet();
+		}
+	}
+
+	private record Fetched(int index, Role role, Map<String, String> tags) {
+	}
+
+	private class FetchTask implements Callable<Fetched> {
+
+		private final int index;
+
+		private final Role role;
+
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		FetchTask(int index, Role role) {
+			this.index = index;
+			this.role = role;
+		}
+
+		@Override
+		public Fetched call() {
+			this.started.set(true);
+			return new Fetched(this.index, this.role, fetch(this.role));
+		}
+
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.Tag;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Batches the writes to a role requested within a short window. Tags to add and remove
+ * are merged into one {@code TagRole} and one {@code UntagRole} call, and puts of the same
+ * inline policy into one {@code PutRolePolicy} call with the last document, since
+ * {@code PutRolePolicy} takes only one policy. Once a batch has been written, the
+ * callbacks of its writes run in the order the writes were requested, before every caller
+ * of the batch is completed with its outcome. Batches are written by {@code concurrency} threads, and the batches of a
+ * role always by the same thread, which keeps the writes to one role and their callbacks
+ * in the same order. Writes
+ * still waiting on {@link #shutdown()} fail.
+ */
+class RoleWriteCoalescer {
+
+	private static final int MAX_TAGS_PER_CALL = 50;
+
+	private final IamClient iamClient;
+
+	private final Duration window;
+
+	private final ScheduledExecutorService[] executors;
+
+	private final Map<String, Batch> pending = new HashMap<>();
+
+	private final Set<Batch> flushing = ConcurrentHashMap.newKeySet();
+
+	private boolean shutdown = false;
+
+	private final DistributionSummary batchSize;
+
+	private final Counter calls;
+
+	RoleWriteCoalescer(IamClient iamClient, Duration window, int concurrency, MeterRegistry meterRegistry) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("iam-role-write-");
+		this.executors = new ScheduledExecutorService[concurrency];
+		for (int i = 0; i < concurrency; i++) {
+			this.executors[i] = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		}
+		this.iamClient = iamClient;
+		this.window = window;
+		this.batchSize = meterRegistry.summary("iam.role.write.batch.size");
+		this.calls = meterRegistry.counter("iam.role.write.calls");
+	}
+
+	CompletableFuture<Void> tag(String roleName, List<Tag> tags, Runnable onWritten) {
+		return this.submit(roleName, batch -> tags.forEach(tag -> {
+			batch.keysToRemove.remove(tag.key());
+			batch.tagsToAdd.put(tag.key(), tag.value());
+		}), onWritten);
+	}
+
+	CompletableFuture<Void> untag(String roleName, List<String> tagKeys, Runnable onWritten) {
+		return this.submit(roleName, batch -> tagKeys.forEach(key -> {
+			batch.tagsToAdd.remove(key);
+			batch.keysToRemove.add(key);
+		}), onWritten);
+	}
+
+	CompletableFuture<Void> putPolicy(String roleName, String policyName, String policyDocument,
+			Runnable onWritten) {
+		return this.submit(roleName, batch -> batch.policies.put(policyName, policyDocument), onWritten);
+	}
+
+	void shutdown() {
+		List<Batch> batches;
+		synchronized (this.pending) {
+			this.shutdown = true;
+			batches = new ArrayList<>(this.pending.values());
+			this.pending.clear();
+		}
+		batches.addAll(this.flushing);
+		for (ScheduledExecutorService executor : this.executors) {
+			executor.shutdownNow();
+		}
+		IllegalStateException e = new IllegalStateException("Role writes have been shut down");
+		batches.forEach(batch -> batch.waiters.forEach(waiter -> waiter.completeExceptionally(e)));
+	}
+
+	private CompletableFuture<Void> submit(String roleName, Consumer<Batch> merge, Runnable onWritten) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		synchronized (this.pending) {
+			if (this.shutdown) {
+				future.completeExceptionally(new IllegalStateException("Role writes have been shut down"));
+				return future;
+			}
+			Batch batch = this.pending.get(roleName);
+			if (batch == null) {
+				batch = new Batch();
+				this.pending.put(roleName, batch);
+				this.executors[Math.floorMod(roleName.hashCode(), this.executors.length)]
+					.schedule(() -> this.flush(roleName), this.window.toMillis(), TimeUnit.MILLISECONDS);
+			}
+			merge.accept(batch);
+			batch.callbacks.add(onWritten);
+			batch.waiters.add(future);
+		}
+		return future;
+	}
+
+	private void flush(String roleName) {
+		Batch batch;
+		synchronized (this.pending) {
+			batch = this.pending.remove(roleName);
+		}
+		if (batch == null) {
+			return;
+		}
+		this.batchSize.record(batch.waiters.size());
+		this.flushing.add(batch);
+		try {
+			if (!batch.keysToRemove.isEmpty()) {
+				this.calls.increment();
+				this.iamClient.untagRole(builder -> builder.roleName(roleName).tagKeys(batch.keysToRemove));
+			}
+			List<Tag> tags = batch.tagsToAdd.entrySet()
+				.stream()
+				.map(entry -> Tag.builder().key(entry.getKey()).value(entry.getValue()).build())
+				.toList();
+			for (int i = 0; i < tags.size(); i += MAX_TAGS_PER_CALL) {
+				List<Tag> chunk = tags.subList(i, Math.min(i + MAX_TAGS_PER_CALL, tags.size()));
+				this.calls.increment();
+				this.iamClient.tagRole(builder -> builder.roleName(roleName).tags(chunk));
+			}
+			batch.policies.forEach((policyName, policyDocument) -> {
+				this.calls.increment();
+				this.iamClient.putRolePolicy(
+						builder -> builder.roleName(roleName).policyName(policyName).policyDocument(policyDocument));
+			});
+			batch.callbacks.forEach(Runnable::run);
+			batch.waiters.forEach(waiter -> waiter.complete(null));
+		}
+		catch (RuntimeException e) {
+			batch.waiters.forEach(waiter -> waiter.completeExceptionally(e));
+		}
+		finally {
+			this.flushing.remove(batch);
+		}
+	}
+
+	private static class Batch {
+
+		private final Map<String, String> tagsToAdd = new LinkedHashMap<>();
+
+		private final Set<String> keysToRemove = new LinkedHashSet<>();
+
+		private final Map<String, String> policies = new LinkedHashMap<>();
+
+		private final List<Runnable> callbacks = new ArrayList<>();
+
+		private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+	}
+
+}
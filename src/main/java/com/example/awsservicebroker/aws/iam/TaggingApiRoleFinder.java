@@ -0,0 +1,70 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.ResourceGroupsTaggingApiClient;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.model.ResourceTagMapping;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.model.Tag;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.model.TagFilter;
+
+/**
+ * Finds roles by tag with the Resource Groups Tagging API, which filters by tag on the
+ * server side instead of reading the tags of every role.
+ */
+class TaggingApiRoleFinder {
+
+	private static final String RESOURCE_TYPE = "iam:role";
+
+	private final ResourceGroupsTaggingApiClient taggingApiClient;
+
+	private final String rolePath;
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	TaggingApiRoleFinder(ResourceGroupsTaggingApiClient taggingApiClient, String rolePath,
+			MeterRegistry meterRegistry) {
+		this.taggingApiClient = taggingApiClient;
+		this.rolePath = rolePath;
+		this.hits = meterRegistry.counter("iam.tagging.api.lookups", "result", "hit");
+		this.misses = meterRegistry.counter("iam.tagging.api.lookups", "result", "miss");
+	}
+
+	record RoleNameAndTags(String roleName, Map<String, String> tags) {
+	}
+
+	/**
+	 * @param tagFilters tag keys mapped to the accepted values; an empty list accepts any
+	 * value
+	 * @return the first role under the role path whose tags match all filters
+	 */
+	Optional<RoleNameAndTags> findRole(Map<String, List<String>> tagFilters) {
+		List<TagFilter> filters = tagFilters.entrySet()
+			.stream()
+			.map(entry -> TagFilter.builder().key(entry.getKey()).values(entry.getValue()).build())
+			.toList();
+		Optional<RoleNameAndTags> found = this.taggingApiClient
+			.getResourcesPaginator(builder -> builder.resourceTypeFilters(RESOURCE_TYPE).tagFilters(filters))
+			.resourceTagMappingList()
+			.stream()
+			.filter(mapping -> mapping.resourceARN().contains(":role" + this.rolePath))
+			.findFirst()
+			.map(TaggingApiRoleFinder::toRoleNameAndTags);
+		(found.isPresent() ? this.hits : this.misses).increment();
+		return found;
+	}
+
+	private static RoleNameAndTags toRoleNameAndTags(ResourceTagMapping mapping) {
+		String arn = mapping.resourceARN();
+		String roleName = arn.substring(arn.lastIndexOf('/') + 1);
+		Map<String, String> tags = mapping.tags().stream().collect(Collectors.toMap(Tag::key, Tag::value));
+		return new RoleNameAndTags(roleName, tags);
+	}
+
+}
@@ -0,0 +1,379 @@
+package com.example.awsservicebroker.aws.s3;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.DeleteMarkerEntry;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.ObjectVersion;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.paginators.ListObjectVersionsIterable;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Deletes every object version and delete marker in a bucket. A producer lists the
+ * bucket on the executor and hands batches of up to 1000 keys, the {@code DeleteObjects}
+ * limit, to the deleting thread, which deletes them while the next page is being listed.
+ * Keys that fail to delete are retried with backoff.
+ * <p>
+ * {@link #emptyInParallel} splits the bucket into disjoint key ranges and empties them on
+ * several workers, which take the next range from a shared queue whenever they are done
+ * with one.
+ * <p>
+ * Every task submitted to the executor holds one of {@code maxThreads} permits, and
+ * emptying a bucket waits for all of its permits before submitting anything, so the
+ * executor never has more tasks than threads and concurrent deprovisionings wait for
+ * each other instead of being rejected.
+ */
+class BucketEmptier {
+
+	static final int BATCH_SIZE = 1000;
+
+	private static final int QUEUE_CAPACITY = 4;
+
+	private static final int MAX_ATTEMPTS = 5;
+
+	private static final Duration INITIAL_BACKOFF = Duration.ofMillis(100);
+
+	private static final String DELIMITER = "/";
+
+	private static final int RANGES_PER_WORKER = 4;
+
+	private static final List<ObjectIdentifier> END_OF_LISTING = new ArrayList<>();
+
+	private final S3Client s3Client;
+
+	private final ExecutorService executor;
+
+	private final int maxThreads;
+
+	private final Semaphore threads;
+
+	private final Counter deletedObjects;
+
+	private final Logger logger = LoggerFactory.getLogger(BucketEmptier.class);
+
+	BucketEmptier(S3Client s3Client, ExecutorService executor, int maxThreads, MeterRegistry meterRegistry) {
+		if (maxThreads < 2) {
+			throw new IllegalArgumentException(
+					"Emptying a bucket takes at least 2 threads, but maxThreads=" + maxThreads);
+		}
+		this.s3Client = s3Client;
+		this.executor = executor;
+		this.maxThreads = maxThreads;
+		// fair, so that a bucket waiting for many threads is not overtaken by smaller ones
+		this.threads = new Semaphore(maxThreads, true);
+		this.deletedObjects = meterRegistry.counter("s3.objects.deleted");
+	}
+
+	/**
+	 * @return the number of object versions and delete markers deleted
+	 */
+	long empty(String bucketName) {
+		long start = System.nanoTime();
+		this.acquireThreads(bucketName, 1);
+		try {
+			long deleted = this.empty(bucketName, KeyRange.ALL, count -> {
+			});
+			logRate(bucketName, deleted, start);
+			return deleted;
+		}
+		finally {
+			this.threads.release(1);
+		}
+	}
+
+	/**
+	 * Empties the bucket on up to {@code workers} workers, each taking two threads of the
+	 * executor, and at most half of {@code maxThreads}. The bucket is split into up to
+	 * {@value #RANGES_PER_WORKER} key ranges per worker at keys and prefixes sampled from
+	 * the first listing page, so a flat bucket is split as well as one with many prefixes.
+	 * Keys beyond the first page all fall into the last range. A final pass deletes
+	 * whatever is left, such as keys written while the ranges were being emptied.
+	 * @param listener notified of the progress after every batch, from any worker
+	 * @return the number of object versions and delete markers deleted
+	 */
+	long emptyInParallel(String bucketName, int workers, Consumer<Progress> listener) {
+		long start = System.nanoTime();
+		int maxWorkers = Math.max(1, Math.min(workers, this.maxThreads / 2));
+		List<KeyRange> ranges = this.splitIntoRanges(bucketName, maxWorkers * RANGES_PER_WORKER);
+		Queue<KeyRange> pendingRanges = new ConcurrentLinkedQueue<>(ranges);
+		AtomicLong deleted = new AtomicLong();
+		AtomicLong deletedInCompletedRanges = new AtomicLong();
+		AtomicInteger completedRanges = new AtomicInteger();
+		Runnable report = () -> {
+			long total = deleted.get();
+			int completed = completedRanges.get();
+			Long remaining = null;
+			if (completed > 0) {
+				long perRange = deletedInCompletedRanges.get() / completed;
+				long inProgress = total - deletedInCompletedRanges.get();
+				remaining = Math.max(perRange * (ranges.size() - completed) - inProgress, 0);
+			}
+			listener.accept(new Progress(total, remaining));
+		};
+		// each worker takes a thread and another for its listing
+		int parallelism = Math.min(maxWorkers, ranges.size());
+		this.acquireThreads(bucketName, 2 * parallelism);
+		try {
+			AtomicBoolean aborted = new AtomicBoolean();
+			List<Future<?>> futures = new ArrayList<>();
+			try {
+				for (int i = 0; i < parallelism; i++) {
+					futures.add(this.executor.submit(() -> {
+						KeyRange range;
+						while (!aborted.get() && (range = pendingRanges.poll()) != null) {
+							long deletedInRange = this.empty(bucketName, range, count -> {
+								deleted.addAndGet(count);
+								report.run();
+							});
+							deletedInCompletedRanges.addAndGet(deletedInRange);
+							completedRanges.incrementAndGet();
+						}
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while emptying bucket " + bucketName, e);
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException runtimeException) {
+					throw runtimeException;
+				}
+				throw new IllegalStateException("Failed to empty bucket " + bucketName, e.getCause());
+			}
+			finally {
+				// interrupts the workers still running when one has failed or could not be
+				// submitted
+				aborted.set(true);
+				futures.forEach(future -> future.cancel(true));
+			}
+			this.empty(bucketName, KeyRange.ALL, count -> {
+				deleted.addAndGet(count);
+				report.run();
+			});
+			logRate(bucketName, deleted.get(), start);
+			return deleted.get();
+		}
+		finally {
+			this.threads.release(2 * parallelism);
+		}
+	}
+
+	/**
+	 * @param deleted object versions and delete markers deleted so far
+	 * @param remainingEstimate extrapolated from the key ranges emptied so far, or
+	 * {@code null} before any has been
+	 */
+	record Progress(long deleted, @Nullable Long remainingEstimate) {
+	}
+
+	/**
+	 * The keys after {@code after} up to and including {@code upTo}, where {@code null}
+	 * leaves the range open.
+	 */
+	record KeyRange(@Nullable String after, @Nullable String upTo) {
+
+		static final KeyRange ALL = new KeyRange(null, null);
+
+		boolean contains(String key) {
+			return (this.after == null || key.compareTo(this.after) > 0)
+					&& (this.upTo == null || key.compareTo(this.upTo) <= 0);
+		}
+
+	}
+
+	private void acquireThreads(String bucketName, int permits) {
+		try {
+			this.threads.acquire(permits);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting to empty bucket " + bucketName, e);
+		}
+	}
+
+	/**
+	 * Splits the bucket at evenly spaced keys and prefixes of its first listing page,
+	 * descending into the prefix that holds every key, if there is one. The ranges cover
+	 * every key, and their boundaries are sorted the way S3 lists keys, which matches
+	 * {@link String#compareTo} for keys without supplementary characters.
+	 */
+	private List<KeyRange> splitIntoRanges(String bucketName, int maxRanges) {
+		ListObjectVersionsResponse page = this.s3Client
+			.listObjectVersions(builder -> builder.bucket(bucketName).delimiter(DELIMITER));
+		while (page.versions().isEmpty() && page.deleteMarkers().isEmpty() && page.commonPrefixes().size() == 1) {
+			String prefix = page.commonPrefixes().get(0).prefix();
+			page = this.s3Client
+				.listObjectVersions(builder -> builder.bucket(bucketName).prefix(prefix).delimiter(DELIMITER));
+		}
+		List<String> boundaries = Stream
+			.of(page.commonPrefixes().stream().map(CommonPrefix::prefix),
+					page.versions().stream().map(ObjectVersion::key),
+					page.deleteMarkers().stream().map(DeleteMarkerEntry::key))
+			.flatMap(keys -> keys)
+			.distinct()
+			.sorted()
+			.toList();
+		int count = Math.max(1, Math.min(maxRanges, boundaries.size()));
+		List<KeyRange> ranges = new ArrayList<>(count);
+		String after = null;
+		for (int i = 1; i < count; i++) {
+			String upTo = boundaries.get(i * boundaries.size() / count - 1);
+			ranges.add(new KeyRange(after, upTo));
+			after = upTo;
+		}
+		ranges.add(new KeyRange(after, null));
+		return ranges;
+	}
+
+	private long empty(String bucketName, KeyRange range, LongConsumer listener) {
+		BlockingQueue<List<ObjectIdentifier>> batches = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		Future<?> producer = this.executor.submit(() -> {
+			this.listObjectVersions(bucketName, range, batches);
+			return null;
+		});
+		long deleted = 0;
+		try {
+			List<ObjectIdentifier> batch;
+			while ((batch = batches.take()) != END_OF_LISTING) {
+				this.deleteObjects(bucketName, batch);
+				deleted += batch.size();
+				this.deletedObjects.increment(batch.size());
+				listener.accept(batch.size());
+			}
+			producer.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while emptying bucket " + bucketName, e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new IllegalStateException("Failed to list bucket " + bucketName, e.getCause());
+		}
+		finally {
+			producer.cancel(true);
+		}
+		return deleted;
+	}
+
+	private void logRate(String bucketName, long deleted, long start) {
+		double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+		logger.info("Emptied bucket bucketName={} objects={} elapsed={}s rate={}/s", bucketName, deleted,
+				String.format("%.1f", seconds), Math.round(deleted / seconds));
+	}
+
+	/**
+	 * Lists the versions and delete markers in the range, and stops at the first page that
+	 * goes beyond it.
+	 */
+	private void listObjectVersions(String bucketName, KeyRange range, BlockingQueue<List<ObjectIdentifier>> batches)
+			throws InterruptedException {
+		boolean interrupted = false;
+		try {
+			List<ObjectIdentifier> batch = new ArrayList<>(BATCH_SIZE);
+			ListObjectVersionsIterable pages = this.s3Client
+				.listObjectVersionsPaginator(builder -> builder.bucket(bucketName).keyMarker(range.after()));
+			for (ListObjectVersionsResponse page : pages) {
+				List<ObjectIdentifier> objects = new ArrayList<>();
+				page.versions().forEach(version -> objects.add(objectIdentifier(version.key(), version.versionId())));
+				page.deleteMarkers().forEach(marker -> objects.add(objectIdentifier(marker.key(), marker.versionId())));
+				boolean beyondRange = objects.stream().anyMatch(object -> !range.contains(object.key()));
+				for (ObjectIdentifier object : objects) {
+					if (!range.contains(object.key())) {
+						continue;
+					}
+					batch.add(object);
+					if (batch.size() == BATCH_SIZE) {
+						batches.put(batch);
+						batch = new ArrayList<>(BATCH_SIZE);
+					}
+				}
+				if (beyondRange) {
+					break;
+				}
+			}
+			if (!batch.isEmpty()) {
+				batches.put(batch);
+			}
+		}
+		catch (InterruptedException e) {
+			// the consumer has given up
+			interrupted = true;
+			throw e;
+		}
+		finally {
+			if (!interrupted) {
+				batches.put(END_OF_LISTING);
+			}
+		}
+	}
+
+	private void deleteObjects(String bucketName, List<ObjectIdentifier> objects) throws InterruptedException {
+		List<ObjectIdentifier> remaining = objects;
+		for (int attempt = 1;; attempt++) {
+			List<ObjectIdentifier> toDelete = remaining;
+			DeleteObjectsResponse response = this.s3Client.deleteObjects(
+					builder -> builder.bucket(bucketName).delete(delete -> delete.objects(toDelete).quiet(true)));
+			if (!response.hasErrors() || response.errors().isEmpty()) {
+				return;
+			}
+			Set<String> failed = response.errors()
+				.stream()
+				.map(error -> error.key() + "?versionId=" + error.versionId())
+				.collect(Collectors.toSet());
+			remaining = toDelete.stream()
+				.filter(object -> failed.contains(object.key() + "?versionId=" + object.versionId()))
+				.toList();
+			S3Error error = response.errors().get(0);
+			if (attempt >= MAX_ATTEMPTS) {
+				throw S3Exception.builder()
+					.message("Failed to delete %d objects from bucket %s: %s %s".formatted(remaining.size(),
+							bucketName, error.code(), error.message()))
+					.build();
+			}
+			logger.warn("Retrying to delete objects bucketName={} objects={} attempt={} code={}", bucketName,
+					remaining.size(), attempt, error.code());
+			Thread.sleep(INITIAL_BACKOFF.toMillis() << (attempt - 1));
+		}
+	}
+
+	private static ObjectIdentifier objectIdentifier(String key, String versionId) {
+		return ObjectIdentifier.builder().key(key).versionId(versionId).build();
+	}
+
+}
@@ -1,8 +1,56 @@
 package com.example.awsservicebroker.aws.s3;
 
+import java.time.Duration;
+
+import com.example.awsservicebroker.aws.LookupBackend;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
 
 @ConfigurationProperties(prefix = "s3")
-public record S3Props(@DefaultValue("cf-") String bucketNamePrefix) {
+public record S3Props(@DefaultValue("cf-") String bucketNamePrefix, @DefaultValue("30s") Duration negativeCacheTtl,
+		@DefaultValue("scan") LookupBackend lookupBackend, @DefaultValue Deprovision deprovision,
+		@DefaultValue Provisioning provisioning) {
+
+	/**
+	 * @param threads number of provisioning steps run at once across all instances
+	 * @param queueCapacity number of steps waiting for a thread. Steps beyond it run on
+	 * the thread that submits them.
+	 */
+	public record Provisioning(@DefaultValue("16") int threads, @DefaultValue("100") int queueCapacity) {
+	}
+
+	/**
+	 * @param mode how buckets are removed on deprovisioning
+	 * @param workers number of top-level key prefix ranges emptied in parallel
+	 * @param checkpointInterval how often the progress of emptying a bucket is recorded
+	 * in its tags
+	 * @param finalizerInterval how often buckets pending deletion are checked in
+	 * {@link Mode#EXPIRE} mode, which requires the {@link LookupBackend#TAGGING_API}
+	 * lookup backend
+	 * @param maxThreads number of threads emptying buckets across all instances. Emptying
+	 * a bucket takes up to twice {@code workers} threads, and waits until they are
+	 * available.
+	 */
+	public record Deprovision(@DefaultValue("delete") Mode mode, @DefaultValue("4") int workers,
+			@DefaultValue("10s") Duration checkpointInterval, @DefaultValue("1h") Duration finalizerInterval,
+			@DefaultValue("64") int maxThreads) {
+
+		public enum Mode {
+
+			/**
+			 * Empty and delete the bucket while deprovisioning.
+			 */
+			DELETE,
+
+			/**
+			 * Let a lifecycle rule expire every object, and delete the bucket in the
+			 * background once it is empty. Requires {@code s3.lookup-backend=tagging-api}.
+			 */
+			EXPIRE
+
+		}
+
+	}
+
 }
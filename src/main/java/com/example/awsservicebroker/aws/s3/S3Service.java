@@ -1,48 +1,111 @@
 package com.example.awsservicebroker.aws.s3;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.example.awsservicebroker.aws.BoundedExecutors;
 import com.example.awsservicebroker.aws.Instance;
+import com.example.awsservicebroker.aws.LookupBackend;
+import com.example.awsservicebroker.aws.NegativeLookupCache;
+import com.example.awsservicebroker.aws.ProgressReporter;
+import com.example.awsservicebroker.aws.StripedLocks;
 import com.example.awsservicebroker.utils.StringUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.regions.providers.AwsRegionProvider;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.ResourceGroupsTaggingApiClient;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.model.ResourceTagMapping;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.Bucket;
 import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
 import software.amazon.awssdk.services.s3.model.CreateBucketConfiguration;
 import software.amazon.awssdk.services.s3.model.CreateBucketResponse;
-import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
-import software.amazon.awssdk.services.s3.model.ListBucketsResponse;
-import software.amazon.awssdk.services.s3.model.ListObjectVersionsRequest;
+import software.amazon.awssdk.services.s3.model.ExpirationStatus;
+import software.amazon.awssdk.services.s3.model.LifecycleRule;
 import software.amazon.awssdk.services.s3.model.ListObjectVersionsResponse;
-import software.amazon.awssdk.services.s3.model.ObjectVersion;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.Tag;
 import software.amazon.awssdk.services.s3.model.Tagging;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 @Component
-public class S3Service {
+public class S3Service implements DisposableBean {
 
 	private final S3Client s3Client;
 
+	private final ResourceGroupsTaggingApiClient taggingApiClient;
+
 	private final S3Props s3Props;
 
 	private final Region region;
 
+	private final NegativeLookupCache negativeLookupCache;
+
+	private final ExecutorService bucketEmptyingExecutor;
+
+	private final BucketEmptier bucketEmptier;
+
+	private final StripedLocks bucketLocks = new StripedLocks(64);
+
+	private final Counter headBucketHits;
+
+	private final Counter taggingApiHits;
+
+	private final Counter scanHits;
+
 	private final Logger logger = LoggerFactory.getLogger(S3Service.class);
 
-	public S3Service(S3Client s3Client, S3Props s3Props, AwsRegionProvider awsRegionProvider) {
+	private static final String INSTANCE_ID_KEY_PREFIX = "instance-id:";
+
+	private static final String BUCKET_KEY_PREFIX = "bucket:";
+
+	private static final String CHECKPOINT_TAG_KEY = "deprovision_deleted_objects";
+
+	private static final String PENDING_DELETION_TAG_KEY = "pending_deletion";
+
+	public S3Service(S3Client s3Client,
+			@Qualifier("resourceGroupsTaggingApiClient") ResourceGroupsTaggingApiClient taggingApiClient,
+			S3Props s3Props, AwsRegionProvider awsRegionProvider, MeterRegistry meterRegistry) {
 		this.s3Client = s3Client;
+		this.taggingApiClient = taggingApiClient;
 		this.s3Props = s3Props;
 		this.region = awsRegionProvider.getRegion();
+		this.negativeLookupCache = new NegativeLookupCache("s3", s3Props.negativeCacheTtl(), meterRegistry);
+		this.headBucketHits = meterRegistry.counter("s3.bucket.lookups", "path", "head-bucket");
+		this.taggingApiHits = meterRegistry.counter("s3.bucket.lookups", "path", "tagging-api");
+		this.scanHits = meterRegistry.counter("s3.bucket.lookups", "path", "scan");
+		// the emptier never submits more tasks than threads, so a task only queues until a
+		// thread that is finishing picks it up
+		int maxThreads = s3Props.deprovision().maxThreads();
+		ThreadPoolExecutor bucketEmptyingExecutor = BoundedExecutors.newExecutor("s3-emptying", maxThreads,
+				maxThreads, false, meterRegistry);
+		bucketEmptyingExecutor.allowCoreThreadTimeOut(true);
+		this.bucketEmptyingExecutor = bucketEmptyingExecutor;
+		this.bucketEmptier = new BucketEmptier(s3Client, this.bucketEmptyingExecutor, maxThreads, meterRegistry);
+	}
+
+	@Override
+	public void destroy() {
+		this.bucketEmptyingExecutor.shutdownNow();
 	}
 
 	public String defaultBucketName(String instanceId) {
@@ -50,18 +113,33 @@ public class S3Service {
 	}
 
 	public CreateBucketResult createBucket(Instance instance, @Nullable String bucketName, @Nullable String region) {
-		String bucketNameToCreate = bucketName == null ? this.defaultBucketName(instance.instanceId()) : bucketName;
+		CreateBucketResult result = this.createBucket(instance.instanceId(), bucketName, region);
+		this.tagBucket(result.bucketName(), instance);
+		return result;
+	}
+
+	/**
+	 * Creates the bucket without tagging it, so that {@link #tagBucket(String, Instance)}
+	 * can run alongside other steps.
+	 */
+	public CreateBucketResult createBucket(String instanceId, @Nullable String bucketName, @Nullable String region) {
+		String bucketNameToCreate = bucketName == null ? this.defaultBucketName(instanceId) : bucketName;
 		String regionToCreate = region == null ? this.region.id() : region;
 		logger.info("Creating bucket bucketName={} region={}", bucketNameToCreate, regionToCreate);
 		CreateBucketResponse response = this.s3Client.createBucket(builder -> builder
 			.createBucketConfiguration(CreateBucketConfiguration.builder().locationConstraint(regionToCreate).build())
 			.bucket(bucketNameToCreate));
 		logger.info("Created bucket bucketName={} location={}", bucketNameToCreate, response.location());
-		this.putBucketTags(bucketNameToCreate,
-				instance.toTags((key, value) -> Tag.builder().key(key).value(value).build()), false);
+		this.negativeLookupCache.invalidate(BUCKET_KEY_PREFIX + bucketNameToCreate);
+		this.negativeLookupCache.invalidate(INSTANCE_ID_KEY_PREFIX + instanceId);
 		return new CreateBucketResult(bucketNameToCreate, regionToCreate);
 	}
 
+	public void tagBucket(String bucketName, Instance instance) {
+		this.putBucketTags(bucketName, instance.toTags((key, value) -> Tag.builder().key(key).value(value).build()),
+				false);
+	}
+
 	public record CreateBucketResult(String bucketName, String region) {
 	}
 
@@ -69,24 +147,32 @@ public class S3Service {
 		return this.s3Client.getBucketTagging(builder -> builder.bucket(bucketName)).tagSet();
 	}
 
+	/**
+	 * Tag writes replace the whole tag set, so those that read the existing tags first
+	 * hold the bucket's lock.
+	 */
 	public void putBucketTags(String bucketName, List<Tag> tags, boolean append) {
-		List<Tag> tagsToPut = new ArrayList<>(tags);
-		if (append) {
-			tagsToPut.addAll(this.listBucketTags(bucketName));
-		}
-		logger.info("Putting tags to bucket bucketName={} tags={}", bucketName, tagsToPut);
-		this.s3Client.putBucketTagging(
-				builder -> builder.bucket(bucketName).tagging(Tagging.builder().tagSet(tagsToPut).build()));
-		logger.info("Putt tags to bucket bucketName={} tags={}", bucketName, tagsToPut);
+		this.bucketLocks.runWithLock(bucketName, () -> {
+			List<Tag> tagsToPut = new ArrayList<>(tags);
+			if (append) {
+				tagsToPut.addAll(this.listBucketTags(bucketName));
+			}
+			logger.info("Putting tags to bucket bucketName={} tags={}", bucketName, tagsToPut);
+			this.s3Client.putBucketTagging(
+					builder -> builder.bucket(bucketName).tagging(Tagging.builder().tagSet(tagsToPut).build()));
+			logger.info("Putt tags to bucket bucketName={} tags={}", bucketName, tagsToPut);
+		});
 	}
 
 	public void removeBucketTags(String bucketName, List<Tag> tags) {
-		List<Tag> tagsToPut = new ArrayList<>(this.listBucketTags(bucketName));
-		tagsToPut.removeAll(tags);
-		logger.info("Putting tags to bucket bucketName={} tags={}", bucketName, tagsToPut);
-		this.s3Client.putBucketTagging(
-				builder -> builder.bucket(bucketName).tagging(Tagging.builder().tagSet(tagsToPut).build()));
-		logger.info("Put tags to bucket bucketName={} tags={}", bucketName, tagsToPut);
+		this.bucketLocks.runWithLock(bucketName, () -> {
+			List<Tag> tagsToPut = new ArrayList<>(this.listBucketTags(bucketName));
+			tagsToPut.removeAll(tags);
+			logger.info("Putting tags to bucket bucketName={} tags={}", bucketName, tagsToPut);
+			this.s3Client.putBucketTagging(
+					builder -> builder.bucket(bucketName).tagging(Tagging.builder().tagSet(tagsToPut).build()));
+			logger.info("Put tags to bucket bucketName={} tags={}", bucketName, tagsToPut);
+		});
 	}
 
 	public void putObject(String bucketName, String objectKey, String content) {
@@ -95,50 +181,272 @@ public class S3Service {
 	}
 
 	public void deleteBucket(String bucketName) {
-		String keyMarker = null;
-		String versionIdMarker = null;
-		do {
-			ListObjectVersionsRequest listObjectVersionsRequest = ListObjectVersionsRequest.builder()
-				.bucket(bucketName)
-				.keyMarker(keyMarker)
-				.versionIdMarker(versionIdMarker)
-				.build();
-			ListObjectVersionsResponse listObjectVersionsResponse = this.s3Client
-				.listObjectVersions(listObjectVersionsRequest);
-			for (ObjectVersion version : listObjectVersionsResponse.versions()) {
-				DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
-					.bucket(bucketName)
-					.key(version.key())
-					.versionId(version.versionId())
-					.build();
-				logger.info("Deleting object bucketName={} key={} version={}", bucketName, version.key(),
-						version.versionId());
-				this.s3Client.deleteObject(deleteObjectRequest);
-				logger.info("Deleted object bucketName={} key={} version={}", bucketName, version.key(),
-						version.versionId());
-			}
-			keyMarker = listObjectVersionsResponse.nextKeyMarker();
-			versionIdMarker = listObjectVersionsResponse.nextVersionIdMarker();
+		this.deleteBucket(bucketName, ProgressReporter.NONE);
+	}
+
+	/**
+	 * Deletes the bucket after emptying it with several workers. The number of objects
+	 * deleted so far is checkpointed in a bucket tag, so a deletion that is started again
+	 * after a restart keeps counting where it stopped. The objects already deleted are
+	 * gone, so the new listing starts with the remaining ones.
+	 */
+	public void deleteBucket(String bucketName, ProgressReporter progressReporter) {
+		if (this.negativeLookupCache.isAbsent(BUCKET_KEY_PREFIX + bucketName)) {
+			logger.info("Skipped deleting bucket bucketName={} as it has already gone", bucketName);
+			return;
+		}
+		try {
+			this.deleteObjectsAndBucket(bucketName, progressReporter);
 		}
-		while (keyMarker != null && versionIdMarker != null);
+		catch (NoSuchBucketException e) {
+			logger.info("Skipped deleting bucket bucketName={} as it has already gone", bucketName);
+		}
+		this.negativeLookupCache.markAbsent(BUCKET_KEY_PREFIX + bucketName);
+	}
+
+	private void deleteObjectsAndBucket(String bucketName, ProgressReporter progressReporter) {
+		long resumedFrom = this.readCheckpoint(bucketName);
+		long checkpointIntervalNanos = this.s3Props.deprovision().checkpointInterval().toNanos();
+		AtomicLong lastCheckpoint = new AtomicLong(System.nanoTime());
+		this.bucketEmptier.emptyInParallel(bucketName, this.s3Props.deprovision().workers(), progress -> {
+			long deleted = resumedFrom + progress.deleted();
+			progressReporter.report(progress.remainingEstimate() == null ? "Deleted %d objects".formatted(deleted)
+					: "Deleted %d objects, about %d remaining".formatted(deleted, progress.remainingEstimate()));
+			long last = lastCheckpoint.get();
+			long now = System.nanoTime();
+			if (now - last >= checkpointIntervalNanos && lastCheckpoint.compareAndSet(last, now)) {
+				this.writeCheckpoint(bucketName, deleted);
+			}
+		});
 		logger.info("Deleting bucket bucketName={}", bucketName);
 		this.s3Client.deleteBucket(builder -> builder.bucket(bucketName));
 		logger.info("Deleted bucket bucketName={}", bucketName);
 	}
 
+	private long readCheckpoint(String bucketName) {
+		return this.listBucketTagsIfPresent(bucketName)
+			.stream()
+			.filter(tag -> tag.key().equals(CHECKPOINT_TAG_KEY))
+			.findAny()
+			.map(tag -> Long.parseLong(tag.value()))
+			.orElse(0L);
+	}
+
+	private void writeCheckpoint(String bucketName, long deleted) {
+		try {
+			this.replaceBucketTag(bucketName,
+					Tag.builder().key(CHECKPOINT_TAG_KEY).value(Long.toString(deleted)).build());
+		}
+		catch (S3Exception e) {
+			// progress is only reported, so emptying goes on
+			logger.warn("Failed to checkpoint bucketName={} deleted={}: {}", bucketName, deleted, e.getMessage());
+		}
+	}
+
+	private void replaceBucketTag(String bucketName, Tag tag) {
+		this.bucketLocks.runWithLock(bucketName, () -> {
+			List<Tag> tags = new ArrayList<>(this.listBucketTagsIfPresent(bucketName)
+				.stream()
+				.filter(existing -> !existing.key().equals(tag.key()))
+				.toList());
+			tags.add(tag);
+			this.s3Client.putBucketTagging(
+					builder -> builder.bucket(bucketName).tagging(Tagging.builder().tagSet(tags).build()));
+		});
+	}
+
+	/**
+	 * Marks the bucket for deletion without emptying it. A lifecycle rule expires every
+	 * current and noncurrent version, removes the delete markers left behind and aborts
+	 * incomplete multipart uploads, so S3 empties the bucket at no cost to the broker.
+	 * {@link #deleteBucketIfEmpty(String)} deletes it afterwards.
+	 */
+	public void expireBucket(String bucketName) {
+		logger.info("Expiring bucket bucketName={}", bucketName);
+		LifecycleRule expireVersions = LifecycleRule.builder()
+			.id("expire-all-versions")
+			.filter(filter -> filter.prefix(""))
+			.status(ExpirationStatus.ENABLED)
+			.expiration(expiration -> expiration.days(1))
+			.noncurrentVersionExpiration(expiration -> expiration.noncurrentDays(1))
+			.abortIncompleteMultipartUpload(abort -> abort.daysAfterInitiation(1))
+			.build();
+		// a rule cannot expire both by age and expired delete markers
+		LifecycleRule removeDeleteMarkers = LifecycleRule.builder()
+			.id("remove-expired-delete-markers")
+			.filter(filter -> filter.prefix(""))
+			.status(ExpirationStatus.ENABLED)
+			.expiration(expiration -> expiration.expiredObjectDeleteMarker(true))
+			.build();
+		this.s3Client.putBucketLifecycleConfiguration(builder -> builder.bucket(bucketName)
+			.lifecycleConfiguration(configuration -> configuration.rules(expireVersions, removeDeleteMarkers)));
+		this.replaceBucketTag(bucketName,
+				Tag.builder().key(PENDING_DELETION_TAG_KEY).value(Instant.now().toString()).build());
+		logger.info("Expired bucket bucketName={}", bucketName);
+	}
+
+	/**
+	 * Finds the buckets marked by {@link #expireBucket(String)} through the Tagging API, so
+	 * that only those buckets have their tags read, as the Tagging API may lag behind.
+	 * @return the buckets marked by {@link #expireBucket(String)}, with the instance each
+	 * was created for
+	 */
+	public List<BucketPendingDeletion> findBucketsPendingDeletion() {
+		return this.taggingApiClient
+			.getResourcesPaginator(builder -> builder.resourceTypeFilters("s3")
+				.tagFilters(filter -> filter.key(PENDING_DELETION_TAG_KEY)))
+			.resourceTagMappingList()
+			.stream()
+			.map(ResourceTagMapping::resourceARN)
+			.map(arn -> arn.substring(arn.lastIndexOf(':') + 1))
+			.flatMap(bucketName -> {
+				Map<String, String> tags = this.listBucketTagsIfPresent(bucketName)
+					.stream()
+					.collect(Collectors.toMap(Tag::key, Tag::value));
+				return tags.containsKey(PENDING_DELETION_TAG_KEY)
+						? Stream.of(new BucketPendingDeletion(bucketName, tags.get("instance_id"))) : Stream.empty();
+			})
+			.toList();
+	}
+
+	public record BucketPendingDeletion(String bucketName, @Nullable String instanceId) {
+	}
+
+	/**
+	 * @return whether the bucket has been deleted or was already gone
+	 */
+	public boolean deleteBucketIfEmpty(String bucketName) {
+		try {
+			ListObjectVersionsResponse response = this.s3Client
+				.listObjectVersions(builder -> builder.bucket(bucketName).maxKeys(1));
+			if (response.hasVersions() && !response.versions().isEmpty()
+					|| response.hasDeleteMarkers() && !response.deleteMarkers().isEmpty()) {
+				return false;
+			}
+			logger.info("Deleting bucket bucketName={}", bucketName);
+			this.s3Client.deleteBucket(builder -> builder.bucket(bucketName));
+			logger.info("Deleted bucket bucketName={}", bucketName);
+		}
+		catch (NoSuchBucketException e) {
+			logger.info("Skipped deleting bucket bucketName={} as it has already gone", bucketName);
+		}
+		this.negativeLookupCache.markAbsent(BUCKET_KEY_PREFIX + bucketName);
+		return true;
+	}
+
 	public void deleteBucketByInstanceId(String instanceId) {
 		this.findBucketByInstanceId(instanceId).ifPresent(bucket -> this.deleteBucket(bucket.name()));
 	}
 
-	@Deprecated
 	public Optional<Bucket> findBucketByInstanceId(String instanceId) {
-		ListBucketsResponse response = this.s3Client.listBuckets();
-		return response.buckets().stream().filter(bucket -> {
-			String bucketName = bucket.name();
-			return this.listBucketTags(bucketName)
+		return this.findBucketByInstanceId(instanceId, null);
+	}
+
+	/**
+	 * Finds the bucket created for the given instance. The known bucket name, or else the
+	 * default one, is checked directly with {@code HeadBucket}. Only if that fails is the
+	 * bucket looked up by its {@code instance_id} tag with the Tagging API, if configured,
+	 * and finally by reading the tags of every bucket in the account. Each path counts the
+	 * lookups it answers in {@code s3.bucket.lookups}.
+	 * @param bucketName the bucket name recorded for the instance, if known
+	 */
+	public Optional<Bucket> findBucketByInstanceId(String instanceId, @Nullable String bucketName) {
+		String key = INSTANCE_ID_KEY_PREFIX + instanceId;
+		if (this.negativeLookupCache.isAbsent(key)) {
+			return Optional.empty();
+		}
+		long generation = this.negativeLookupCache.generation(key);
+		String candidate = bucketName == null ? this.defaultBucketName(instanceId) : bucketName;
+		Optional<Bucket> found = this.headBucket(candidate)
+			.filter(bucket -> this.hasInstanceIdTag(bucket.name(), instanceId))
+			.map(counted(this.headBucketHits))
+			.or(() -> this.findBucketWithTaggingApi(instanceId).map(counted(this.taggingApiHits)))
+			.or(() -> this.streamBuckets()
+				.filter(bucket -> this.hasInstanceIdTag(bucket.name(), instanceId))
+				.findAny()
+				.map(counted(this.scanHits)));
+		if (found.isEmpty()) {
+			this.negativeLookupCache.markAbsent(key, generation);
+		}
+		return found;
+	}
+
+	private static UnaryOperator<Bucket> counted(Counter hits) {
+		return bucket -> {
+			hits.increment();
+			return bucket;
+		};
+	}
+
+	private Optional<Bucket> headBucket(String bucketName) {
+		try {
+			this.s3Client.headBucket(builder -> builder.bucket(bucketName));
+			return Optional.of(Bucket.builder().name(bucketName).build());
+		}
+		catch (NoSuchBucketException e) {
+			return Optional.empty();
+		}
+		catch (S3Exception e) {
+			// 403 when the name is taken by another account
+			if (e.statusCode() == 403 || e.statusCode() == 404) {
+				return Optional.empty();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * The Tagging API only reports buckets in this region and is eventually consistent, so
+	 * its answer is checked against the bucket's tags, and a miss or failure is left to the
+	 * scan.
+	 */
+	private Optional<Bucket> findBucketWithTaggingApi(String instanceId) {
+		if (this.s3Props.lookupBackend() != LookupBackend.TAGGING_API) {
+			return Optional.empty();
+		}
+		try {
+			return this.taggingApiClient
+				.getResourcesPaginator(builder -> builder.resourceTypeFilters("s3")
+					.tagFilters(filter -> filter.key("instance_id").values(instanceId)))
+				.resourceTagMappingList()
 				.stream()
-				.anyMatch(tag -> tag.key().equals("instance_id") && tag.value().equals(instanceId));
-		}).findAny();
+				.map(ResourceTagMapping::resourceARN)
+				.map(arn -> arn.substring(arn.lastIndexOf(':') + 1))
+				.filter(name -> this.hasInstanceIdTag(name, instanceId))
+				.findFirst()
+				.map(name -> Bucket.builder().name(name).build());
+		}
+		catch (RuntimeException e) {
+			logger.warn("Failed to look up bucket with the Tagging API, falling back to a scan: {}", e.getMessage());
+			return Optional.empty();
+		}
+	}
+
+	private boolean hasInstanceIdTag(String bucketName, String instanceId) {
+		return this.listBucketTagsIfPresent(bucketName)
+			.stream()
+			.anyMatch(tag -> tag.key().equals("instance_id") && tag.value().equals(instanceId));
+	}
+
+	/**
+	 * Streams the buckets owned by the account. {@code ListBuckets} returns every bucket in
+	 * a single response, so only the per-bucket reads made downstream are lazy.
+	 */
+	private Stream<Bucket> streamBuckets() {
+		return this.s3Client.listBuckets().buckets().stream();
+	}
+
+	private List<Tag> listBucketTagsIfPresent(String bucketName) {
+		try {
+			return this.listBucketTags(bucketName);
+		}
+		catch (S3Exception e) {
+			// NoSuchTagSet for untagged buckets, or the bucket has been deleted meanwhile
+			if (e.statusCode() == 404) {
+				return List.of();
+			}
+			throw e;
+		}
 	}
 
 	public void enableVersioning(String bucketName) {
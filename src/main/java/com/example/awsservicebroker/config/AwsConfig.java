@@ -1,10 +1,26 @@
 package com.example.awsservicebroker.config;
 
+import com.example.awsservicebroker.aws.AwsCircuitBreaker;
+import com.example.awsservicebroker.aws.CircuitBreakerProps;
+import com.example.awsservicebroker.aws.iam.IamProps;
+import com.example.awsservicebroker.aws.iam.IamRateLimiter;
 import io.awspring.cloud.autoconfigure.core.AwsClientBuilderConfigurer;
+import io.awspring.cloud.autoconfigure.core.AwsClientCustomizer;
 import io.awspring.cloud.autoconfigure.core.AwsConnectionDetails;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.conditions.RetryCondition;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
 import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.IamClientBuilder;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.ResourceGroupsTaggingApiClient;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
 
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -12,10 +28,91 @@ import org.springframework.context.annotation.Configuration;
 public class AwsConfig {
 
 	@Bean
+	public AwsCircuitBreaker iamCircuitBreaker(CircuitBreakerProps circuitBreakerProps, MeterRegistry meterRegistry) {
+		return new AwsCircuitBreaker("iam", circuitBreakerProps, meterRegistry);
+	}
+
+	@Bean
+	public AwsCircuitBreaker s3CircuitBreaker(CircuitBreakerProps circuitBreakerProps, MeterRegistry meterRegistry) {
+		return new AwsCircuitBreaker("s3", circuitBreakerProps, meterRegistry);
+	}
+
+	@Bean
+	public AwsCircuitBreaker dynamodbCircuitBreaker(CircuitBreakerProps circuitBreakerProps,
+			MeterRegistry meterRegistry) {
+		return new AwsCircuitBreaker("dynamodb", circuitBreakerProps, meterRegistry);
+	}
+
+	@Bean
+	public AwsClientCustomizer<S3ClientBuilder> s3ClientCustomizer(CircuitBreakerProps circuitBreakerProps,
+			@Qualifier("s3CircuitBreaker") AwsCircuitBreaker s3CircuitBreaker) {
+		return circuitBreakerCustomizer(circuitBreakerProps, s3CircuitBreaker);
+	}
+
+	@Bean
+	public AwsClientCustomizer<DynamoDbClientBuilder> dynamoDbClientCustomizer(
+			CircuitBreakerProps circuitBreakerProps,
+			@Qualifier("dynamodbCircuitBreaker") AwsCircuitBreaker dynamodbCircuitBreaker) {
+		return circuitBreakerCustomizer(circuitBreakerProps, dynamodbCircuitBreaker);
+	}
+
+	/**
+	 * IAM client that retries throttled calls with the standard backoff and, if enabled,
+	 * fails fast through its {@link AwsCircuitBreaker} and paces every attempt with an
+	 * {@link IamRateLimiter}.
+	 */
+	@Bean
 	public IamClient iamClient(AwsClientBuilderConfigurer awsClientBuilderConfigurer,
+			ObjectProvider<AwsConnectionDetails> connectionDetails, IamProps iamProps,
+			CircuitBreakerProps circuitBreakerProps,
+			@Qualifier("iamCircuitBreaker") AwsCircuitBreaker iamCircuitBreaker, MeterRegistry meterRegistry) {
+		IamClientBuilder builder = awsClientBuilderConfigurer.configure(IamClient.builder(), null,
+				connectionDetails.getIfAvailable(), null);
+		ClientOverrideConfiguration.Builder overrideConfiguration = builder.overrideConfiguration().toBuilder();
+		if (circuitBreakerProps.enabled()) {
+			overrideConfiguration.addExecutionInterceptor(iamCircuitBreaker);
+		}
+		RetryCondition retryCondition = RetryCondition.defaultRetryCondition();
+		if (iamProps.rateLimit().enabled()) {
+			IamRateLimiter rateLimiter = new IamRateLimiter(iamProps.rateLimit(), meterRegistry);
+			overrideConfiguration.addExecutionInterceptor(rateLimiter);
+			retryCondition = rateLimiter.throttlingAware(retryCondition);
+		}
+		overrideConfiguration
+			.retryPolicy(RetryPolicy.builder(RetryMode.STANDARD).retryCondition(retryCondition).build());
+		return builder.overrideConfiguration(overrideConfiguration.build()).build();
+	}
+
+	@Bean
+	public ResourceGroupsTaggingApiClient resourceGroupsTaggingApiClient(
+			AwsClientBuilderConfigurer awsClientBuilderConfigurer,
 			ObjectProvider<AwsConnectionDetails> connectionDetails) {
-		return awsClientBuilderConfigurer.configure(IamClient.builder(), null, connectionDetails.getIfAvailable(), null)
+		return awsClientBuilderConfigurer
+			.configure(ResourceGroupsTaggingApiClient.builder(), null, connectionDetails.getIfAvailable(), null)
 			.build();
 	}
 
+	/**
+	 * Tagging API client for IAM resources, which are reported in a single region.
+	 */
+	@Bean
+	public ResourceGroupsTaggingApiClient iamTaggingApiClient(AwsClientBuilderConfigurer awsClientBuilderConfigurer,
+			ObjectProvider<AwsConnectionDetails> connectionDetails, IamProps iamProps) {
+		return awsClientBuilderConfigurer
+			.configure(ResourceGroupsTaggingApiClient.builder(), null, connectionDetails.getIfAvailable(), null)
+			.region(Region.of(iamProps.taggingApi().region()))
+			.build();
+	}
+
+	private static <T> AwsClientCustomizer<T> circuitBreakerCustomizer(CircuitBreakerProps circuitBreakerProps,
+			AwsCircuitBreaker circuitBreaker) {
+		return new AwsClientCustomizer<>() {
+			@Override
+			public ClientOverrideConfiguration overrideConfiguration() {
+				return circuitBreakerProps.enabled()
+						? ClientOverrideConfiguration.builder().addExecutionInterceptor(circuitBreaker).build() : null;
+			}
+		};
+	}
+
 }
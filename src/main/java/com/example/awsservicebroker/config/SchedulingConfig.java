@@ -0,0 +1,56 @@
+package com.example.awsservicebroker.config;
+
+import java.time.Duration;
+
+import com.example.awsservicebroker.aws.LookupBackend;
+import com.example.awsservicebroker.aws.iam.IamProps;
+import com.example.awsservicebroker.aws.iam.IamService;
+import com.example.awsservicebroker.aws.s3.S3Props;
+import com.example.awsservicebroker.servicebroker.service.S3ServiceBrokerService;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.FixedDelayTask;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+@Configuration(proxyBeanMethods = false)
+@EnableScheduling
+public class SchedulingConfig implements SchedulingConfigurer {
+
+	private final IamService iamService;
+
+	private final IamProps iamProps;
+
+	private final S3ServiceBrokerService s3ServiceBrokerService;
+
+	private final S3Props s3Props;
+
+	public SchedulingConfig(IamService iamService, IamProps iamProps, S3ServiceBrokerService s3ServiceBrokerService,
+			S3Props s3Props) {
+		this.iamService = iamService;
+		this.iamProps = iamProps;
+		this.s3ServiceBrokerService = s3ServiceBrokerService;
+		this.s3Props = s3Props;
+	}
+
+	@Override
+	public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+		if (this.iamProps.index().enabled()) {
+			taskRegistrar.addFixedDelayTask(new FixedDelayTask(this.iamService::refreshRoleTagIndex,
+					this.iamProps.index().refreshInterval(), Duration.ZERO));
+		}
+		if (this.s3Props.deprovision().mode() == S3Props.Deprovision.Mode.EXPIRE) {
+			// the finalizer finds pending buckets by tag, which would otherwise be a scan of
+			// every bucket in the account
+			if (this.s3Props.lookupBackend() != LookupBackend.TAGGING_API) {
+				throw new IllegalStateException(
+						"'s3.deprovision.mode' expire requires 's3.lookup-backend' tagging-api");
+			}
+			Duration interval = this.s3Props.deprovision().finalizerInterval();
+			taskRegistrar.addFixedDelayTask(
+					new FixedDelayTask(this.s3ServiceBrokerService::finalizePendingDeletions, interval, interval));
+		}
+	}
+
+}
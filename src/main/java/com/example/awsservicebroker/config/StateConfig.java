@@ -0,0 +1,50 @@
+package com.example.awsservicebroker.config;
+
+import com.example.awsservicebroker.ServiceBrokerProps;
+import com.example.awsservicebroker.ServiceBrokerProps.BindingPolicy;
+import com.example.awsservicebroker.ServiceBrokerProps.InstanceStateBackend;
+import com.example.awsservicebroker.aws.iam.IamService;
+import com.example.awsservicebroker.servicebroker.service.InMemoryOperationStore;
+import com.example.awsservicebroker.servicebroker.service.InstanceStateStore;
+import com.example.awsservicebroker.servicebroker.service.OperationStore;
+import com.example.awsservicebroker.servicebroker.service.RoleTagInstanceStateStore;
+import com.example.awsservicebroker.servicebroker.service.S3InstanceStateStore;
+import com.example.awsservicebroker.servicebroker.service.S3OperationStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+@Configuration(proxyBeanMethods = false)
+public class StateConfig {
+
+	@Bean
+	public OperationStore operationStore(ServiceBrokerProps props, S3Client s3Client, ObjectMapper objectMapper) {
+		String stateBucket = props.stateBucket();
+		return StringUtils.hasText(stateBucket) ? new S3OperationStore(s3Client, stateBucket, objectMapper)
+				: new InMemoryOperationStore();
+	}
+
+	@Bean
+	public InstanceStateStore instanceStateStore(ServiceBrokerProps props, IamService iamService, S3Client s3Client,
+			ObjectMapper objectMapper) {
+		RoleTagInstanceStateStore roleTagStore = new RoleTagInstanceStateStore(iamService);
+		if (props.instanceState() == InstanceStateBackend.ROLE_TAG) {
+			if (props.bindingPolicy() != BindingPolicy.PER_BINDING) {
+				throw new IllegalStateException(
+						"'service-broker.binding-policy' %s requires 'service-broker.instance-state' state-bucket"
+							.formatted(props.bindingPolicy()));
+			}
+			return roleTagStore;
+		}
+		String stateBucket = props.stateBucket();
+		if (!StringUtils.hasText(stateBucket)) {
+			throw new IllegalStateException(
+					"'service-broker.state-bucket' is required when 'service-broker.instance-state' is state-bucket");
+		}
+		return new S3InstanceStateStore(s3Client, stateBucket, objectMapper, roleTagStore);
+	}
+
+}
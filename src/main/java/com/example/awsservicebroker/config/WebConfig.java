@@ -0,0 +1,40 @@
+package com.example.awsservicebroker.config;
+
+import com.example.awsservicebroker.aws.iam.IamReadCache;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration(proxyBeanMethods = false)
+public class WebConfig implements WebMvcConfigurer {
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new IamReadCacheInterceptor()).addPathPatterns("/v2/service_instances/**");
+	}
+
+	/**
+	 * Scopes {@link IamReadCache} to one controller invocation.
+	 */
+	static class IamReadCacheInterceptor implements HandlerInterceptor {
+
+		@Override
+		public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+			IamReadCache.open();
+			return true;
+		}
+
+		@Override
+		public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+				@Nullable Exception ex) {
+			IamReadCache.close();
+		}
+
+	}
+
+}
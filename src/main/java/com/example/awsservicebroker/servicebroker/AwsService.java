@@ -51,6 +51,13 @@ public enum AwsService {
 				+ StringUtils.removeHyphen(bindingId);
 	}
 
+	/**
+	 * @return the name of the policy shared by all bindings of the instance
+	 */
+	public String policyName(String instanceId) {
+		return name().toLowerCase(Locale.ENGLISH) + "-" + StringUtils.removeHyphen(instanceId);
+	}
+
 	public String getServiceBrokerServiceBeanName() {
 		return StringUtils.toUpperCamel(name()) + "ServiceBrokerService";
 	}
@@ -0,0 +1,25 @@
+package com.example.awsservicebroker.servicebroker;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import org.springframework.lang.Nullable;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record LastOperation(@JsonProperty("state") State state,
+		@Nullable @JsonProperty("description") String description) {
+
+	public enum State {
+
+		@JsonProperty("in progress")
+		IN_PROGRESS,
+
+		@JsonProperty("succeeded")
+		SUCCEEDED,
+
+		@JsonProperty("failed")
+		FAILED
+
+	}
+
+}
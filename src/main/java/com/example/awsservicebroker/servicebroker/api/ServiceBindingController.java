@@ -1,13 +1,17 @@
 package com.example.awsservicebroker.servicebroker.api;
 
 import java.util.Map;
+import java.util.Optional;
 
 import com.example.awsservicebroker.aws.iam.IamService;
 import com.example.awsservicebroker.aws.s3.S3Service;
 import com.example.awsservicebroker.servicebroker.AwsService;
 import com.example.awsservicebroker.servicebroker.Context;
+import com.example.awsservicebroker.servicebroker.LastOperation;
 import com.example.awsservicebroker.servicebroker.ServiceBindRequest;
 import com.example.awsservicebroker.servicebroker.ServiceBindResponse;
+import com.example.awsservicebroker.servicebroker.service.InstanceLocks;
+import com.example.awsservicebroker.servicebroker.service.OperationService;
 import com.example.awsservicebroker.servicebroker.service.ServiceBrokerService;
 import com.example.awsservicebroker.utils.StringUtils;
 import org.slf4j.Logger;
@@ -20,6 +24,7 @@ import software.amazon.awssdk.services.s3.model.Bucket;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -40,14 +45,23 @@ public class ServiceBindingController {
 
 	private final Region region;
 
+	private final OperationService operationService;
+
+	private final InstanceLocks instanceLocks;
+
 	private static final Logger log = LoggerFactory.getLogger(ServiceBindingController.class);
 
+	static final String BIND_OPERATION = "bind";
+
 	public ServiceBindingController(Map<String, ServiceBrokerService> serviceBrokerServices, IamService iamService,
-			S3Service s3Service, AwsRegionProvider regionProvider) {
+			S3Service s3Service, AwsRegionProvider regionProvider, OperationService operationService,
+			InstanceLocks instanceLocks) {
 		this.serviceBrokerServices = serviceBrokerServices;
 		this.iamService = iamService;
 		this.s3Service = s3Service;
 		this.region = regionProvider.getRegion();
+		this.operationService = operationService;
+		this.instanceLocks = instanceLocks;
 	}
 
 	ServiceBrokerService getServiceBrokerService(String serviceId) {
@@ -61,12 +75,65 @@ public class ServiceBindingController {
 
 	// https://github.com/openservicebrokerapi/servicebroker/blob/v2.15/spec.md#binding
 	@PutMapping
-	public ResponseEntity<ServiceBindResponse> bind(@PathVariable("instanceId") String instanceId,
-			@PathVariable("bindingId") String bindingId, @RequestBody ServiceBindRequest request) {
-		log.info("bind instanceId={}, bindingId={}, request={}", instanceId, bindingId, request);
+	public ResponseEntity<?> bind(@PathVariable("instanceId") String instanceId,
+			@PathVariable("bindingId") String bindingId, @RequestBody ServiceBindRequest request,
+			@RequestParam(name = "accepts_incomplete", defaultValue = "false") boolean acceptsIncomplete) {
+		log.info("bind instanceId={}, bindingId={}, request={}, acceptsIncomplete={}", instanceId, bindingId, request,
+				acceptsIncomplete);
 		ServiceBrokerService serviceBrokerService = this.getServiceBrokerService(request.serviceId());
-		Map<String, Object> credentials = serviceBrokerService.bind(instanceId, bindingId, request);
-		return ResponseEntity.status(HttpStatus.CREATED).body(new ServiceBindResponse(credentials));
+		if (acceptsIncomplete && serviceBrokerService.supportsAsyncBinding()) {
+			String operation = this.operationService.start(request.serviceId(), bindingKey(instanceId, bindingId),
+					BIND_OPERATION, progressReporter -> serviceBrokerService.bind(instanceId, bindingId, request));
+			return ResponseEntity.accepted().body(Map.of("operation", operation));
+		}
+		try (InstanceLocks.Lock lock = this.instanceLocks.lock(bindingKey(instanceId, bindingId))) {
+			Map<String, Object> credentials = serviceBrokerService.bind(instanceId, bindingId, request);
+			return ResponseEntity.status(HttpStatus.CREATED).body(new ServiceBindResponse(credentials));
+		}
+	}
+
+	// https://github.com/openservicebrokerapi/servicebroker/blob/v2.15/spec.md#fetching-a-service-binding
+	@GetMapping
+	public ResponseEntity<ServiceBindResponse> fetchBinding(@PathVariable("instanceId") String instanceId,
+			@PathVariable("bindingId") String bindingId,
+			@RequestParam(name = "service_id", required = false) String serviceId,
+			@RequestParam(name = "plan_id", required = false) String planId) {
+		Optional<Map<String, Object>> credentials;
+		if (serviceId != null) {
+			credentials = this.getServiceBrokerService(serviceId).fetchBinding(instanceId, bindingId);
+		}
+		else {
+			credentials = this.serviceBrokerServices.values()
+				.stream()
+				.filter(ServiceBrokerService::supportsAsyncBinding)
+				.flatMap(serviceBrokerService -> serviceBrokerService.fetchBinding(instanceId, bindingId).stream())
+				.findFirst();
+		}
+		return credentials.map(found -> ResponseEntity.ok(new ServiceBindResponse(found)))
+			.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "The binding is not found."));
+	}
+
+	// https://github.com/openservicebrokerapi/servicebroker/blob/v2.15/spec.md#polling-last-operation-for-service-bindings
+	@GetMapping("/last_operation")
+	public ResponseEntity<LastOperation> lastOperation(@PathVariable("instanceId") String instanceId,
+			@PathVariable("bindingId") String bindingId,
+			@RequestParam(name = "service_id", required = false) String serviceId,
+			@RequestParam(name = "plan_id", required = false) String planId,
+			@RequestParam(name = "operation", required = false) String operation) {
+		String operationKey = bindingKey(instanceId, bindingId);
+		Optional<LastOperation> lastOperation = this.operationService.lastOperation(operationKey, operation);
+		if (lastOperation.isPresent()) {
+			return ResponseEntity.ok(lastOperation.get());
+		}
+		if (BIND_OPERATION.equals(operation) && serviceId != null) {
+			// interrupted by a restart, so settle it by whether the policy was attached
+			boolean bound = this.getServiceBrokerService(serviceId).fetchBinding(instanceId, bindingId).isPresent();
+			LastOperation settled = bound ? new LastOperation(LastOperation.State.SUCCEEDED, null)
+					: new LastOperation(LastOperation.State.FAILED, "The binding was interrupted.");
+			this.operationService.complete(operationKey, operation, settled.state(), settled.description());
+			return ResponseEntity.ok(settled);
+		}
+		throw new ResponseStatusException(HttpStatus.GONE, "The operation is not found.");
 	}
 
 	// https://github.com/openservicebrokerapi/servicebroker/blob/v2.15/spec.md#unbinding
@@ -77,8 +144,14 @@ public class ServiceBindingController {
 		log.info("unbind instanceId={}, bindingId={}, serviceId={}, planId={}", instanceId, bindingId, serviceId,
 				planId);
 		ServiceBrokerService serviceBrokerService = this.getServiceBrokerService(serviceId);
-		serviceBrokerService.unbind(instanceId, bindingId, serviceId, planId);
+		try (InstanceLocks.Lock lock = this.instanceLocks.lock(bindingKey(instanceId, bindingId))) {
+			serviceBrokerService.unbind(instanceId, bindingId, serviceId, planId);
+		}
 		return ResponseEntity.ok(Map.of());
 	}
 
+	private static String bindingKey(String instanceId, String bindingId) {
+		return instanceId + "/" + bindingId;
+	}
+
 }
\ No newline at end of file
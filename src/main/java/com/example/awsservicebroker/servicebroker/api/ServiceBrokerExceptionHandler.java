@@ -0,0 +1,32 @@
+package com.example.awsservicebroker.servicebroker.api;
+
+import java.util.Map;
+
+import com.example.awsservicebroker.aws.CircuitOpenException;
+import com.example.awsservicebroker.servicebroker.service.ConcurrencyException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class ServiceBrokerExceptionHandler {
+
+	// https://github.com/openservicebrokerapi/servicebroker/blob/v2.15/spec.md#service-broker-errors
+	@ExceptionHandler(ConcurrencyException.class)
+	public ResponseEntity<Map<String, Object>> handleConcurrencyException(ConcurrencyException e) {
+		return ResponseEntity.unprocessableEntity()
+			.body(Map.of("error", "ConcurrencyError", "description", e.getMessage()));
+	}
+
+	@ExceptionHandler(CircuitOpenException.class)
+	public ResponseEntity<Map<String, Object>> handleCircuitOpenException(CircuitOpenException e) {
+		long retryAfterSeconds = Math.max(1, (e.retryAfter().toMillis() + 999) / 1000);
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+			.header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+			.body(Map.of("description", e.getMessage() + " Try again later."));
+	}
+
+}
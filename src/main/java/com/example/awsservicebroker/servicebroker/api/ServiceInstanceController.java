@@ -1,10 +1,15 @@
 package com.example.awsservicebroker.servicebroker.api;
 
 import java.util.Map;
+import java.util.Optional;
 
 import com.example.awsservicebroker.servicebroker.AwsService;
+import com.example.awsservicebroker.servicebroker.LastOperation;
 import com.example.awsservicebroker.servicebroker.ServiceProvisioningRequest;
 import com.example.awsservicebroker.servicebroker.ServiceUpdateRequest;
+import com.example.awsservicebroker.servicebroker.service.ConcurrencyException;
+import com.example.awsservicebroker.servicebroker.service.InstanceLocks;
+import com.example.awsservicebroker.servicebroker.service.OperationService;
 import com.example.awsservicebroker.servicebroker.service.ServiceBrokerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +17,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -27,10 +33,21 @@ public class ServiceInstanceController {
 
 	private final Map<String, ServiceBrokerService> serviceBrokerServices;
 
+	private final OperationService operationService;
+
+	private final InstanceLocks instanceLocks;
+
 	private static final Logger log = LoggerFactory.getLogger(ServiceInstanceController.class);
 
-	public ServiceInstanceController(Map<String, ServiceBrokerService> serviceBrokerServices) {
+	static final String PROVISION_OPERATION = "provision";
+
+	static final String DEPROVISION_OPERATION = "deprovision";
+
+	public ServiceInstanceController(Map<String, ServiceBrokerService> serviceBrokerServices,
+			OperationService operationService, InstanceLocks instanceLocks) {
 		this.serviceBrokerServices = serviceBrokerServices;
+		this.operationService = operationService;
+		this.instanceLocks = instanceLocks;
 	}
 
 	ServiceBrokerService getServiceBrokerService(String serviceId) {
@@ -45,11 +62,21 @@ public class ServiceInstanceController {
 	// https://github.com/openservicebrokerapi/servicebroker/blob/v2.15/spec.md#provisioning
 	@PutMapping
 	public ResponseEntity<Map<String, Object>> provisioning(@PathVariable("instanceId") String instanceId,
-			@RequestBody ServiceProvisioningRequest request) {
-		log.info("Provisioning instanceId={} request={}", instanceId, request);
+			@RequestBody ServiceProvisioningRequest request,
+			@RequestParam(name = "accepts_incomplete", defaultValue = "false") boolean acceptsIncomplete) {
+		log.info("Provisioning instanceId={} request={} acceptsIncomplete={}", instanceId, request,
+				acceptsIncomplete);
 		ServiceBrokerService serviceBrokerService = this.getServiceBrokerService(request.serviceId());
-		Map<String, Object> provisioned = serviceBrokerService.provisioning(instanceId, request);
-		return ResponseEntity.status(HttpStatus.CREATED).body(provisioned);
+		if (acceptsIncomplete && serviceBrokerService.supportsAsyncProvisioning()) {
+			serviceBrokerService.validateProvisioning(instanceId, request);
+			String operation = this.operationService.start(request.serviceId(), instanceId, PROVISION_OPERATION,
+					progressReporter -> serviceBrokerService.provisioning(instanceId, request));
+			return ResponseEntity.accepted().body(Map.of("operation", operation));
+		}
+		try (InstanceLocks.Lock lock = this.instanceLocks.lock(instanceId)) {
+			Map<String, Object> provisioned = serviceBrokerService.provisioning(instanceId, request);
+			return ResponseEntity.status(HttpStatus.CREATED).body(provisioned);
+		}
 	}
 
 	// https://github.com/openservicebrokerapi/servicebroker/blob/v2.15/spec.md#updating-a-service-instance
@@ -58,7 +85,9 @@ public class ServiceInstanceController {
 			@RequestBody ServiceUpdateRequest request) {
 		log.info("Update instanceId={} request={}", instanceId, request);
 		ServiceBrokerService serviceBrokerService = this.getServiceBrokerService(request.serviceId());
-		serviceBrokerService.update(instanceId, request);
+		try (InstanceLocks.Lock lock = this.instanceLocks.lock(instanceId)) {
+			serviceBrokerService.update(instanceId, request);
+		}
 		// log.warn("This operation is not supported");
 		return ResponseEntity.ok(Map.of());
 	}
@@ -66,11 +95,77 @@ public class ServiceInstanceController {
 	// https://github.com/openservicebrokerapi/servicebroker/blob/v2.15/spec.md#deprovisioning
 	@DeleteMapping
 	public ResponseEntity<?> deprovisioning(@PathVariable("instanceId") String instanceId,
-			@RequestParam("service_id") String serviceId, @RequestParam("plan_id") String planId) {
-		log.info("Deprovisioning instanceId={} serviceId={} planId={}", instanceId, serviceId, planId);
+			@RequestParam("service_id") String serviceId, @RequestParam("plan_id") String planId,
+			@RequestParam(name = "accepts_incomplete", defaultValue = "false") boolean acceptsIncomplete) {
+		log.info("Deprovisioning instanceId={} serviceId={} planId={} acceptsIncomplete={}", instanceId, serviceId,
+				planId, acceptsIncomplete);
 		ServiceBrokerService serviceBrokerService = this.getServiceBrokerService(serviceId);
-		serviceBrokerService.deprovisioning(instanceId, serviceId, planId);
+		if (acceptsIncomplete && serviceBrokerService.supportsAsyncDeprovisioning()) {
+			String operation = this.startDeprovisioning(serviceBrokerService, instanceId, serviceId, planId);
+			return ResponseEntity.accepted().body(Map.of("operation", operation));
+		}
+		try (InstanceLocks.Lock lock = this.instanceLocks.lock(instanceId)) {
+			serviceBrokerService.deprovisioning(instanceId, serviceId, planId);
+		}
 		return ResponseEntity.ok(Map.of());
 	}
 
-}
\ No newline at end of file
+	// https://github.com/openservicebrokerapi/servicebroker/blob/v2.15/spec.md#polling-last-operation-for-service-instances
+	@GetMapping("/last_operation")
+	public ResponseEntity<LastOperation> lastOperation(@PathVariable("instanceId") String instanceId,
+			@RequestParam(name = "service_id", required = false) String serviceId,
+			@RequestParam(name = "plan_id", required = false) String planId,
+			@RequestParam(name = "operation", required = false) String operation) {
+		Optional<LastOperation> lastOperation = this.operationService.lastOperation(instanceId, operation);
+		if (lastOperation.isPresent()) {
+			return ResponseEntity.ok(lastOperation.get());
+		}
+		if (PROVISION_OPERATION.equals(operation) && serviceId != null
+				&& this.operationService.isInterrupted(instanceId, operation)) {
+			// accepted and then interrupted by a restart, so settle it by whether the
+			// instance was completed, and remove what it left behind if it was not
+			ServiceBrokerService serviceBrokerService = this.getServiceBrokerService(serviceId);
+			LastOperation settled;
+			try (InstanceLocks.Lock lock = this.instanceLocks.lock(instanceId)) {
+				if (serviceBrokerService.instanceExists(instanceId)) {
+					settled = new LastOperation(LastOperation.State.SUCCEEDED, null);
+				}
+				else {
+					log.info("Compensating interrupted provisioning instanceId={}", instanceId);
+					serviceBrokerService.compensateInterruptedProvisioning(instanceId);
+					settled = new LastOperation(LastOperation.State.FAILED, "The provisioning was interrupted.");
+				}
+			}
+			catch (ConcurrencyException e) {
+				// another request holds the instance, so try again on the next poll
+				return ResponseEntity.ok(new LastOperation(LastOperation.State.IN_PROGRESS, null));
+			}
+			this.operationService.complete(instanceId, operation, settled.state(), settled.description());
+			return ResponseEntity.ok(settled);
+		}
+		if (DEPROVISION_OPERATION.equals(operation) && serviceId != null
+				&& this.operationService.isInterrupted(instanceId, operation)) {
+			// accepted and then interrupted by a restart, so start it again. It carries on
+			// with what is left.
+			log.info("Resuming deprovisioning instanceId={}", instanceId);
+			try {
+				this.startDeprovisioning(this.getServiceBrokerService(serviceId), instanceId, serviceId, planId);
+			}
+			catch (ConcurrencyException e) {
+				// another request holds the instance, so try again on the next poll
+				log.info("Postponed resuming deprovisioning instanceId={}", instanceId);
+			}
+			return ResponseEntity.ok(new LastOperation(LastOperation.State.IN_PROGRESS, "Resuming"));
+		}
+		// never accepted here, so the platform sends the request again
+		throw new ResponseStatusException(HttpStatus.GONE, "The operation is not found.");
+	}
+
+	private String startDeprovisioning(ServiceBrokerService serviceBrokerService, String instanceId,
+			String serviceId, String planId) {
+		return this.operationService.start(serviceId, instanceId, DEPROVISION_OPERATION,
+				progressReporter -> serviceBrokerService.deprovisioning(instanceId, serviceId, planId,
+						progressReporter));
+	}
+
+}
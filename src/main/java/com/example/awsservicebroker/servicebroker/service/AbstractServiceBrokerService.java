@@ -1,28 +1,56 @@
 package com.example.awsservicebroker.servicebroker.service;
 
-import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import com.example.awsservicebroker.ServiceBrokerProps;
+import com.example.awsservicebroker.ServiceBrokerProps.BindingPolicy;
+import com.example.awsservicebroker.aws.StripedLocks;
 import com.example.awsservicebroker.aws.iam.IamService;
 import com.example.awsservicebroker.servicebroker.AwsService;
+import com.example.awsservicebroker.servicebroker.service.InstanceStateStore.InstanceState;
+import software.amazon.awssdk.services.iam.model.EntityAlreadyExistsException;
+import software.amazon.awssdk.services.iam.model.NoSuchEntityException;
 import software.amazon.awssdk.services.iam.model.Role;
-import software.amazon.awssdk.services.iam.model.Tag;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
+/**
+ * Base of the services whose instances are backed by an existing role. The role and the
+ * "role tag value" of each instance, such as {@code bucket/region}, are kept in the
+ * {@link InstanceStateStore}, which is the role's tags by default.
+ */
 public abstract class AbstractServiceBrokerService implements ServiceBrokerService {
 
+	protected static final String PENDING_DELETION = "pending_deletion";
+
 	protected final IamService iamService;
 
-	protected AbstractServiceBrokerService(IamService iamService) {
+	protected final InstanceStateStore instanceStateStore;
+
+	private final BindingPolicy bindingPolicy;
+
+	private final StripedLocks instanceStateLocks = new StripedLocks(64);
+
+	protected AbstractServiceBrokerService(IamService iamService, InstanceStateStore instanceStateStore,
+			ServiceBrokerProps props) {
 		this.iamService = iamService;
+		this.instanceStateStore = instanceStateStore;
+		this.bindingPolicy = props.bindingPolicy();
 	}
 
 	protected abstract AwsService awsService();
 
+	/**
+	 * @return the policy granting access to the instance, used for the customer managed
+	 * policy created at provisioning
+	 */
+	protected abstract String policyDocument(String roleTagValue);
+
 	protected record PolicyAndResult<T>(String policy, T result) {
 	}
 
@@ -32,17 +60,40 @@ public abstract class AbstractServiceBrokerService implements ServiceBrokerServi
 	protected record RoleAndRoleTagValue(Role role, String roleTagValue) {
 	}
 
+	@Override
+	public boolean instanceExists(String instanceId) {
+		return this.instanceStateStore.find(awsService().roleTagKey(instanceId)).isPresent();
+	}
+
 	final protected void addRoleTag(String roleName, String instanceId, Supplier<String> roleTagValueSupplier) {
+		this.validateRole(roleName);
+		this.putRoleTag(roleName, instanceId, roleTagValueSupplier.get());
+	}
+
+	final protected void validateRole(String roleName) {
 		this.iamService.findRoleByRoleName(roleName)
 			.orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
 					"The given role (role_name=%s) is not found".formatted(roleName)));
-		String roleTagKey = awsService().roleTagKey(instanceId);
-		String roleTagValue = roleTagValueSupplier.get();
-		this.iamService.addRoleTags(roleName, List.of(Tag.builder().key(roleTagKey).value(roleTagValue).build()));
+	}
+
+	final protected void putRoleTag(String roleName, String instanceId, String roleTagValue) {
+		if (this.bindingPolicy == BindingPolicy.MANAGED) {
+			try {
+				this.iamService.createManagedPolicy(awsService().policyName(instanceId),
+						this.policyDocument(roleTagValue));
+			}
+			catch (EntityAlreadyExistsException e) {
+				// created by a provisioning that is retried
+			}
+		}
+		this.instanceStateStore.save(awsService().roleTagKey(instanceId), new InstanceState(roleName, roleTagValue));
 	}
 
 	final protected <T> RoleAndResult<T> attachInlinePolicy(String instanceId, String bindingId,
 			Function<String, PolicyAndResult<T>> roleTagValueMapper) {
+		if (this.bindingPolicy != BindingPolicy.PER_BINDING) {
+			return this.attachInstancePolicy(instanceId, bindingId, roleTagValueMapper);
+		}
 		RoleAndRoleTagValue roleAndRoleTagValue = this.findRoleAndRoleTagValue(instanceId);
 		Role role = roleAndRoleTagValue.role();
 		PolicyAndResult<T> policyAndResult = roleTagValueMapper.apply(roleAndRoleTagValue.roleTagValue());
@@ -51,38 +102,194 @@ public abstract class AbstractServiceBrokerService implements ServiceBrokerServi
 		return new RoleAndResult<>(role, policyAndResult.result());
 	}
 
-	final protected RoleAndRoleTagValue findRoleAndRoleTagValue(String instanceId) {
+	/**
+	 * Counts the binding in the instance state, and attaches the policy shared by the
+	 * bindings of the instance unless it is already on the role. The binding is counted
+	 * first, so that an unbind running on another broker instance either sees it or
+	 * deletes the policy before it is attached again. If attaching fails, the binding is
+	 * uncounted only if this call counted it, so a retried bind does not uncount the
+	 * binding that an earlier attempt has completed.
+	 */
+	private <T> RoleAndResult<T> attachInstancePolicy(String instanceId, String bindingId,
+			Function<String, PolicyAndResult<T>> roleTagValueMapper) {
 		String roleTagKey = awsService().roleTagKey(instanceId);
-		Role role = this.iamService.findRoleByTags(tagMap -> tagMap.containsKey(roleTagKey))
+		return this.instanceStateLocks.withLock(roleTagKey, () -> {
+			// the update is called again if another broker instance saved the state in between
+			AtomicBoolean counted = new AtomicBoolean();
+			InstanceState state = this.instanceStateStore.update(roleTagKey, current -> {
+				counted.set(!current.bindingIds().contains(bindingId));
+				return current.withBindingId(bindingId);
+			}).orElseThrow(() -> new ResponseStatusException(HttpStatus.GONE, "The instance has gone."));
+			try {
+				Role role = this.findRole(state)
+					.orElseThrow(() -> new ResponseStatusException(HttpStatus.GONE, "The instance has gone."));
+				PolicyAndResult<T> policyAndResult = roleTagValueMapper.apply(state.value());
+				this.putInstancePolicy(role, instanceId, policyAndResult.policy());
+				return new RoleAndResult<>(role, policyAndResult.result());
+			}
+			catch (RuntimeException e) {
+				if (counted.get()) {
+					this.instanceStateStore.update(roleTagKey, current -> current.withoutBindingId(bindingId));
+				}
+				throw e;
+			}
+		});
+	}
+
+	/**
+	 * @return the instance's role and role tag value if the binding's policy has been
+	 * attached to the role
+	 */
+	final protected Optional<RoleAndRoleTagValue> findBinding(String instanceId, String bindingId) {
+		String bindingPolicyName = awsService().policyName(instanceId, bindingId);
+		return this.instanceStateStore.find(awsService().roleTagKey(instanceId))
+			.flatMap(state -> this.findRole(state).filter(role -> {
+				if (this.bindingPolicy != BindingPolicy.PER_BINDING && state.bindingIds().contains(bindingId)) {
+					return this.hasInstancePolicy(role, instanceId);
+				}
+				// also bindings created before the binding policy was switched
+				return this.iamService.hasInlinePolicy(role.roleName(), bindingPolicyName);
+			}).map(role -> new RoleAndRoleTagValue(role, state.value())));
+	}
+
+	final protected RoleAndRoleTagValue findRoleAndRoleTagValue(String instanceId) {
+		return this.findInstance(instanceId)
 			.orElseThrow(() -> new ResponseStatusException(HttpStatus.GONE, "The instance has gone."));
-		List<Tag> tags = this.iamService.listRoleTags(role.roleName());
-		Tag roleTag = tags.stream()
-			.filter(tag -> tag.key().equals(roleTagKey))
-			.findAny()
-			.orElseThrow(() -> new ResponseStatusException(HttpStatus.GONE,
-					"The corresponding tag '%s' is not found in the role '%s'.".formatted(roleTagKey,
-							role.roleName())));
-		return new RoleAndRoleTagValue(role, roleTag.value());
 	}
 
 	final protected void detachInlinePolicy(String instanceId, String bindingId, Runnable beforeDetach) {
-		String roleTagKey = awsService().roleTagKey(instanceId);
-		this.iamService.findRoleByTags(tagMap -> tagMap.containsKey(roleTagKey)).ifPresent(role -> {
+		if (this.bindingPolicy != BindingPolicy.PER_BINDING) {
+			this.detachInstancePolicy(instanceId, bindingId, beforeDetach);
+			return;
+		}
+		this.findInstance(instanceId).ifPresent(roleAndRoleTagValue -> {
 			beforeDetach.run();
 			String policyName = awsService().policyName(instanceId, bindingId);
-			this.iamService.detachInlinePolicyFromRole(role.roleName(), policyName);
+			this.iamService.detachInlinePolicyFromRole(roleAndRoleTagValue.role().roleName(), policyName);
 		});
 	}
 
+	/**
+	 * Uncounts the binding, and deletes the policy shared by the bindings of the instance
+	 * once no binding is left. The policy is attached again if a binding has been counted
+	 * on another broker instance in the meantime.
+	 */
+	private void detachInstancePolicy(String instanceId, String bindingId, Runnable beforeDetach) {
+		String roleTagKey = awsService().roleTagKey(instanceId);
+		this.instanceStateLocks.runWithLock(roleTagKey, () -> this.instanceStateStore.find(roleTagKey)
+			.ifPresent(state -> this.findRole(state).ifPresent(role -> {
+				beforeDetach.run();
+				if (!state.bindingIds().contains(bindingId)) {
+					// created before the binding policy was switched
+					String bindingPolicyName = awsService().policyName(instanceId, bindingId);
+					if (this.iamService.hasInlinePolicy(role.roleName(), bindingPolicyName)) {
+						this.iamService.detachInlinePolicyFromRole(role.roleName(), bindingPolicyName);
+					}
+					return;
+				}
+				boolean lastBinding = this.instanceStateStore
+					.update(roleTagKey, current -> current.withoutBindingId(bindingId))
+					.filter(unbound -> unbound.bindingIds().isEmpty())
+					.isPresent();
+				if (lastBinding && this.hasInstancePolicy(role, instanceId)) {
+					this.removeInstancePolicy(role, instanceId);
+					this.instanceStateStore.find(roleTagKey)
+						.filter(current -> !current.bindingIds().isEmpty())
+						.ifPresent(current -> this.putInstancePolicy(role, instanceId,
+								this.policyDocument(current.value())));
+				}
+			})));
+	}
+
+	/**
+	 * Appends {@link #PENDING_DELETION} to the instance's role tag value, so the instance
+	 * is kept until a background finalizer removes it. The consumer is called with the
+	 * original value, unless the value has already been marked.
+	 */
+	final protected void markRoleTagPendingDeletion(String instanceId, Consumer<String> roleTagValueConsumer) {
+		String roleTagKey = awsService().roleTagKey(instanceId);
+		this.instanceStateLocks.runWithLock(roleTagKey, () -> this.instanceStateStore.find(roleTagKey)
+			.filter(state -> !state.value().endsWith(TAG_DELIMITER + PENDING_DELETION))
+			.ifPresent(state -> {
+				roleTagValueConsumer.accept(state.value());
+				this.instanceStateStore.save(roleTagKey,
+						state.withValue(ServiceBrokerService.joinTagValue(state.value(), PENDING_DELETION)));
+			}));
+	}
+
 	final protected void removeRoleTag(String instanceId, Consumer<String> roleTagValueConsumer) {
 		String roleTagKey = awsService().roleTagKey(instanceId);
-		this.iamService.findRoleByTags(tagMap -> tagMap.containsKey(roleTagKey)).ifPresent(role -> {
-			List<Tag> tags = this.iamService.listRoleTags(role.roleName());
-			tags.stream().filter(tag -> tag.key().equals(roleTagKey)).findAny().ifPresent(tag -> {
-				roleTagValueConsumer.accept(tag.value());
-			});
-			this.iamService.removeRoleTags(role.roleName(), List.of(roleTagKey));
+		this.instanceStateStore.find(roleTagKey).ifPresent(state -> {
+			roleTagValueConsumer.accept(state.value());
+			if (this.bindingPolicy == BindingPolicy.MANAGED) {
+				this.findRole(state).ifPresent(role -> this.deleteManagedPolicy(role, instanceId));
+			}
+			else if (!state.bindingIds().isEmpty()) {
+				// the shared policy of bindings left behind would outlive the instance
+				this.findRole(state)
+					.filter(role -> this.hasInstancePolicy(role, instanceId))
+					.ifPresent(role -> this.removeInstancePolicy(role, instanceId));
+			}
+			this.instanceStateStore.delete(roleTagKey);
 		});
 	}
 
+	private Optional<RoleAndRoleTagValue> findInstance(String instanceId) {
+		return this.instanceStateStore.find(awsService().roleTagKey(instanceId))
+			.flatMap(state -> this.findRole(state).map(role -> new RoleAndRoleTagValue(role, state.value())));
+	}
+
+	private Optional<Role> findRole(InstanceState state) {
+		return this.iamService.findRoleByRoleName(state.roleName());
+	}
+
+	private boolean hasInstancePolicy(Role role, String instanceId) {
+		String policyName = awsService().policyName(instanceId);
+		if (this.bindingPolicy == BindingPolicy.MANAGED) {
+			return this.iamService.hasManagedPolicy(role.roleName(),
+					this.iamService.managedPolicyArn(role, policyName));
+		}
+		return this.iamService.hasInlinePolicy(role.roleName(), policyName);
+	}
+
+	private void putInstancePolicy(Role role, String instanceId, String policyDocument) {
+		String policyName = awsService().policyName(instanceId);
+		if (this.bindingPolicy == BindingPolicy.MANAGED) {
+			// attaching is idempotent, so it is not checked first
+			String policyArn = this.iamService.managedPolicyArn(role, policyName);
+			try {
+				this.iamService.attachManagedPolicyToRole(role.roleName(), policyArn);
+			}
+			catch (NoSuchEntityException e) {
+				// provisioned before managed policies were used
+				this.iamService.createManagedPolicy(policyName, policyDocument);
+				this.iamService.attachManagedPolicyToRole(role.roleName(), policyArn);
+			}
+		}
+		else if (!this.iamService.hasInlinePolicy(role.roleName(), policyName)) {
+			this.iamService.attachInlinePolicyToRole(role.roleName(), policyName, policyDocument);
+		}
+	}
+
+	private void removeInstancePolicy(Role role, String instanceId) {
+		String policyName = awsService().policyName(instanceId);
+		if (this.bindingPolicy == BindingPolicy.MANAGED) {
+			this.iamService.detachManagedPolicyFromRole(role.roleName(),
+					this.iamService.managedPolicyArn(role, policyName));
+		}
+		else {
+			this.iamService.detachInlinePolicyFromRole(role.roleName(), policyName);
+		}
+	}
+
+	private void deleteManagedPolicy(Role role, String instanceId) {
+		String policyArn = this.iamService.managedPolicyArn(role, awsService().policyName(instanceId));
+		try {
+			this.iamService.deleteManagedPolicy(policyArn);
+		}
+		catch (NoSuchEntityException e) {
+			// already deleted, or provisioned before managed policies were used and never bound
+		}
+	}
+
 }
@@ -0,0 +1,13 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+/**
+ * Thrown when another operation is already mutating the same service instance or
+ * binding. It is answered with the {@code ConcurrencyError} of the spec.
+ */
+public class ConcurrencyException extends RuntimeException {
+
+	public ConcurrencyException(String key) {
+		super("Another operation for %s is in progress.".formatted(key));
+	}
+
+}
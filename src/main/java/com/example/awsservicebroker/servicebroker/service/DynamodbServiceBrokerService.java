@@ -1,7 +1,10 @@
 package com.example.awsservicebroker.servicebroker.service;
 
 import java.util.Map;
+import java.util.Optional;
 
+import com.example.awsservicebroker.ServiceBrokerProps;
+import com.example.awsservicebroker.aws.ProgressReporter;
 import com.example.awsservicebroker.aws.dynamodb.DynamodbService;
 import com.example.awsservicebroker.aws.iam.IamService;
 import com.example.awsservicebroker.servicebroker.AwsService;
@@ -31,8 +34,9 @@ public class DynamodbServiceBrokerService extends AbstractServiceBrokerService {
 	private final ObjectMapper objectMapper;
 
 	public DynamodbServiceBrokerService(DynamodbService dynamodbService, IamService iamService,
-			AwsRegionProvider regionProvider, ObjectMapper objectMapper) {
-		super(iamService);
+			InstanceStateStore instanceStateStore, ServiceBrokerProps props, AwsRegionProvider regionProvider,
+			ObjectMapper objectMapper) {
+		super(iamService, instanceStateStore, props);
 		this.dynamodbService = dynamodbService;
 		this.region = regionProvider.getRegion();
 		this.objectMapper = objectMapper;
@@ -43,12 +47,24 @@ public class DynamodbServiceBrokerService extends AbstractServiceBrokerService {
 		return AwsService.DYNAMODB;
 	}
 
+	@Override
+	protected String policyDocument(String roleTagValue) {
+		return this.dynamodbService.buildTrustPolicyForTable(roleTagValue);
+	}
+
+	@Override
+	public void validateProvisioning(String instanceId, ServiceProvisioningRequest request) {
+		this.bindProvisioningParameters(request);
+	}
+
+	@Override
+	public boolean supportsAsyncProvisioning() {
+		return true;
+	}
+
 	@Override
 	public Map<String, Object> provisioning(String instanceId, ServiceProvisioningRequest request) {
-		ProvisioningParameters params = request.bindParametersTo(ProvisioningParameters.class, this.objectMapper);
-		if (params == null || !StringUtils.hasText(params.roleName())) {
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'role_name' parameter is required");
-		}
+		ProvisioningParameters params = this.bindProvisioningParameters(request);
 		String roleName = params.roleName();
 		super.addRoleTag(roleName, instanceId, () -> this.dynamodbService.defaultTablePrefix(instanceId));
 		return Map.of();
@@ -65,6 +81,18 @@ public class DynamodbServiceBrokerService extends AbstractServiceBrokerService {
 		return credentialsWithRole(role, Map.of("prefix", tablePrefix, "region", region.id()));
 	}
 
+	@Override
+	public boolean supportsAsyncBinding() {
+		return true;
+	}
+
+	@Override
+	public Optional<Map<String, Object>> fetchBinding(String instanceId, String bindingId) {
+		return super.findBinding(instanceId, bindingId)
+			.map(roleAndRoleTagValue -> credentialsWithRole(roleAndRoleTagValue.role(),
+					Map.of("prefix", roleAndRoleTagValue.roleTagValue(), "region", region.id())));
+	}
+
 	@Override
 	public void unbind(String instanceId, String bindingId, String serviceId, String planId) {
 		super.detachInlinePolicy(instanceId, bindingId, () -> {
@@ -74,9 +102,30 @@ public class DynamodbServiceBrokerService extends AbstractServiceBrokerService {
 
 	@Override
 	public void deprovisioning(String instanceId, String serviceId, String planId) {
+		// a synchronous request does not wait until the tables are gone
 		super.removeRoleTag(instanceId, this.dynamodbService::deleteTableWithPrefix);
 	}
 
+	@Override
+	public void deprovisioning(String instanceId, String serviceId, String planId,
+			ProgressReporter progressReporter) {
+		super.removeRoleTag(instanceId,
+				tablePrefix -> this.dynamodbService.deleteTableWithPrefix(tablePrefix, progressReporter));
+	}
+
+	@Override
+	public boolean supportsAsyncDeprovisioning() {
+		return true;
+	}
+
+	private ProvisioningParameters bindProvisioningParameters(ServiceProvisioningRequest request) {
+		ProvisioningParameters params = request.bindParametersTo(ProvisioningParameters.class, this.objectMapper);
+		if (params == null || !StringUtils.hasText(params.roleName())) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'role_name' parameter is required");
+		}
+		return params;
+	}
+
 	public record ProvisioningParameters(@Nullable @JsonProperty("role_name") String roleName) {
 	}
 
@@ -1,8 +1,10 @@
 package com.example.awsservicebroker.servicebroker.service;
 
 import java.util.Map;
+import java.util.Optional;
 
 import com.example.awsservicebroker.aws.iam.IamService;
+import com.example.awsservicebroker.servicebroker.Context;
 import com.example.awsservicebroker.servicebroker.ServiceBindRequest;
 import com.example.awsservicebroker.servicebroker.ServiceProvisioningRequest;
 import software.amazon.awssdk.services.iam.model.EntityAlreadyExistsException;
@@ -41,8 +43,11 @@ public class IamRoleServiceBrokerService implements ServiceBrokerService {
 
 	@Override
 	public Map<String, Object> bind(String instanceId, String bindingId, ServiceBindRequest request) {
-		Role role = this.iamService.findRoleByInstanceId(instanceId)
-			.orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Instance not found"));
+		Context context = request.context();
+		Optional<Role> found = context == null ? this.iamService.findRoleByInstanceId(instanceId)
+				: this.iamService.findRoleByInstanceId(instanceId, context.instanceName(), context.organizationName(),
+						context.spaceName());
+		Role role = found.orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Instance not found"));
 		return credentialsWithRole(role, Map.of());
 	}
 
@@ -0,0 +1,32 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.awsservicebroker.servicebroker.LastOperation.State;
+
+/**
+ * Keeps operations in memory, so they are lost on restart and not shared between broker
+ * instances.
+ */
+public class InMemoryOperationStore implements OperationStore {
+
+	private static final int MAX_ENTRIES = 10_000;
+
+	private final Map<String, OperationRecord> records = new ConcurrentHashMap<>();
+
+	@Override
+	public Optional<OperationRecord> find(String key) {
+		return Optional.ofNullable(this.records.get(key));
+	}
+
+	@Override
+	public void save(String key, OperationRecord record) {
+		if (this.records.size() >= MAX_ENTRIES && !this.records.containsKey(key)) {
+			this.records.values().removeIf(existing -> existing.state() != State.IN_PROGRESS);
+		}
+		this.records.put(key, record);
+	}
+
+}
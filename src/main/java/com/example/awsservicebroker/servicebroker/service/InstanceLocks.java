@@ -0,0 +1,91 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets one operation at a time mutate a service instance or binding, while operations on
+ * different ones run fully in parallel. A binding lock also holds its instance shared, so
+ * bindings of one instance run in parallel with each other but not with an operation on
+ * the instance itself. A request that finds the key locked fails at once with a
+ * {@link ConcurrencyException} instead of queueing, and the platform retries it later. A
+ * lock may be released by another thread than the one that acquired it, as asynchronous
+ * operations do.
+ */
+@Component
+public class InstanceLocks {
+
+	private static final String BINDING_DELIMITER = "/";
+
+	// guarded by this
+	private final Map<String, Lock> locks = new HashMap<>();
+
+	// the number of binding locks held on each instance, guarded by this
+	private final Map<String, Integer> bindingLocks = new HashMap<>();
+
+	private final Counter conflicts;
+
+	public InstanceLocks(MeterRegistry meterRegistry) {
+		this.conflicts = meterRegistry.counter("instance.lock.conflicts");
+	}
+
+	/**
+	 * @param key the instance id, or the instance and binding ids of a binding joined by
+	 * {@code /}
+	 * @throws ConcurrencyException if the key is already locked, if it is an instance with
+	 * a binding locked, or if it is a binding of a locked instance
+	 */
+	public synchronized Lock lock(String key) {
+		int delimiter = key.indexOf(BINDING_DELIMITER);
+		String instanceId = delimiter < 0 ? null : key.substring(0, delimiter);
+		if (this.locks.containsKey(key) || instanceId == null && this.bindingLocks.containsKey(key)) {
+			throw this.conflict(key);
+		}
+		if (instanceId != null && this.locks.containsKey(instanceId)) {
+			throw this.conflict(instanceId);
+		}
+		Lock lock = new Lock(key, instanceId);
+		this.locks.put(key, lock);
+		if (instanceId != null) {
+			this.bindingLocks.merge(instanceId, 1, Integer::sum);
+		}
+		return lock;
+	}
+
+	private ConcurrencyException conflict(String key) {
+		this.conflicts.increment();
+		return new ConcurrencyException(key);
+	}
+
+	private synchronized void release(Lock lock) {
+		if (this.locks.remove(lock.key, lock) && lock.instanceId != null) {
+			this.bindingLocks.computeIfPresent(lock.instanceId, (instanceId, count) -> count > 1 ? count - 1 : null);
+		}
+	}
+
+	public final class Lock implements AutoCloseable {
+
+		private final String key;
+
+		@Nullable
+		private final String instanceId;
+
+		private Lock(String key, @Nullable String instanceId) {
+			this.key = key;
+			this.instanceId = instanceId;
+		}
+
+		@Override
+		public void close() {
+			InstanceLocks.this.release(this);
+		}
+
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the state of each S3 and DynamoDB service instance: the role that backs it and a
+ * value such as {@code bucket/region} or the table prefix.
+ */
+public interface InstanceStateStore {
+
+	/**
+	 * @param key the role tag key of the instance, such as {@code s3-<instanceId>}
+	 */
+	Optional<InstanceState> find(String key);
+
+	void save(String key, InstanceState state);
+
+	void delete(String key);
+
+	/**
+	 * Saves the state that {@code update} derives from the current one. Stores shared by
+	 * several broker instances call {@code update} again with the newer state if another
+	 * one saved it in between, so no update is lost.
+	 * @return the saved state, or empty if the instance has no state
+	 */
+	default Optional<InstanceState> update(String key, UnaryOperator<InstanceState> update) {
+		return this.find(key).map(state -> {
+			InstanceState updated = update.apply(state);
+			this.save(key, updated);
+			return updated;
+		});
+	}
+
+	/**
+	 * @param bindingIds the bindings sharing the instance's policy, only kept with the
+	 * {@code per-instance} binding policy
+	 */
+	record InstanceState(String roleName, String value, Set<String> bindingIds) {
+
+		public InstanceState {
+			// absent from the objects saved before binding ids were kept
+			bindingIds = bindingIds == null ? Set.of() : Set.copyOf(bindingIds);
+		}
+
+		public InstanceState(String roleName, String value) {
+			this(roleName, value, Set.of());
+		}
+
+		InstanceState withValue(String value) {
+			return new InstanceState(this.roleName, value, this.bindingIds);
+		}
+
+		InstanceState withBindingId(String bindingId) {
+			Set<String> bindingIds = new HashSet<>(this.bindingIds);
+			bindingIds.add(bindingId);
+			return new InstanceState(this.roleName, this.value, bindingIds);
+		}
+
+		InstanceState withoutBindingId(String bindingId) {
+			Set<String> bindingIds = new HashSet<>(this.bindingIds);
+			bindingIds.remove(bindingId);
+			return new InstanceState(this.roleName, this.value, bindingIds);
+		}
+
+	}
+
+}
@@ -0,0 +1,224 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.example.awsservicebroker.ServiceBrokerProps;
+import com.example.awsservicebroker.aws.BoundedExecutors;
+import com.example.awsservicebroker.aws.ProgressReporter;
+import com.example.awsservicebroker.servicebroker.AwsService;
+import com.example.awsservicebroker.servicebroker.LastOperation;
+import com.example.awsservicebroker.servicebroker.LastOperation.State;
+import com.example.awsservicebroker.servicebroker.service.OperationStore.OperationRecord;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Runs asynchronous operations on service instances and bindings on a bounded pool and
+ * records their state in the {@link OperationStore} for the platform to poll. Running
+ * operations are saved periodically, so a record in progress that has not been saved for
+ * a while belongs to an operation that a restart has interrupted.
+ */
+@Component
+public class OperationService implements DisposableBean {
+
+	private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(30);
+
+	private static final Duration STALE_AFTER = HEARTBEAT_INTERVAL.multipliedBy(4);
+
+	private final OperationStore operationStore;
+
+	private final InstanceLocks instanceLocks;
+
+	private final Map<String, Operation> running = new ConcurrentHashMap<>();
+
+	private final Map<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+
+	private final ServiceBrokerProps.Operations props;
+
+	private final MeterRegistry meterRegistry;
+
+	private final ScheduledExecutorService heartbeat = Executors
+		.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("operation-heartbeat-"));
+
+	private final Logger logger = LoggerFactory.getLogger(OperationService.class);
+
+	public OperationService(OperationStore operationStore, InstanceLocks instanceLocks, ServiceBrokerProps props,
+			MeterRegistry meterRegistry) {
+		this.operationStore = operationStore;
+		this.instanceLocks = instanceLocks;
+		this.props = props.operations();
+		this.meterRegistry = meterRegistry;
+		this.heartbeat.scheduleWithFixedDelay(this::saveRunning, HEARTBEAT_INTERVAL.toMillis(),
+				HEARTBEAT_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts the operation in the background, unless the same operation is already running
+	 * for the key. The key is locked in {@link InstanceLocks} until the operation ends.
+	 * Each service has its own pool, so that operations stuck on one AWS service do not
+	 * hold up the others.
+	 * @param serviceId the service of the instance
+	 * @param key the instance id, or the instance and binding ids of a binding
+	 * @return the operation token to return to the platform
+	 * @throws ConcurrencyException if another operation holds the key
+	 */
+	public String start(String serviceId, String key, String operation, Consumer<ProgressReporter> task) {
+		Operation existing = this.running.get(key);
+		if (existing != null && existing.name.equals(operation)) {
+			return operation;
+		}
+		InstanceLocks.Lock lock = this.instanceLocks.lock(key);
+		Operation started = new Operation(operation);
+		this.running.put(key, started);
+		try {
+			// the record tells a poll after a restart that the operation was accepted
+			this.operationStore.save(key, new OperationRecord(operation, State.IN_PROGRESS, null, Instant.now()));
+		}
+		catch (RuntimeException e) {
+			this.running.remove(key, started);
+			lock.close();
+			throw e;
+		}
+		try {
+			this.executor(serviceId).execute(() -> this.run(key, started, lock, task));
+		}
+		catch (RejectedExecutionException e) {
+			this.running.remove(key, started);
+			lock.close();
+			started.complete(State.FAILED, "Too many operations in progress");
+			this.save(key, started);
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+					"Too many operations in progress. Try again later.");
+		}
+		return operation;
+	}
+
+	/**
+	 * @return the state of the operation, or empty if it is unknown or has been
+	 * interrupted
+	 */
+	public Optional<LastOperation> lastOperation(String key, @Nullable String operation) {
+		Operation current = this.running.get(key);
+		if (current != null && current.name.equals(operation)) {
+			return Optional.of(new LastOperation(current.state, current.description));
+		}
+		return this.operationStore.find(key)
+			.filter(record -> record.operation().equals(operation))
+			.filter(record -> !isStale(record))
+			.map(record -> new LastOperation(record.state(), record.description()));
+	}
+
+	/**
+	 * @return whether the operation was accepted and then interrupted by a restart before
+	 * it ended, going by its record
+	 */
+	public boolean isInterrupted(String key, String operation) {
+		Operation current = this.running.get(key);
+		if (current != null && current.name.equals(operation)) {
+			return false;
+		}
+		return this.operationStore.find(key)
+			.filter(record -> record.operation().equals(operation))
+			.filter(OperationService::isStale)
+			.isPresent();
+	}
+
+	private static boolean isStale(OperationRecord record) {
+		return record.state() == State.IN_PROGRESS && !record.updatedAt().isAfter(Instant.now().minus(STALE_AFTER));
+	}
+
+	/**
+	 * Records the outcome of an operation that was not run by this service, such as one
+	 * found to have been interrupted.
+	 */
+	public void complete(String key, String operation, State state, @Nullable String description) {
+		this.operationStore.save(key, new OperationRecord(operation, state, description, Instant.now()));
+	}
+
+	private void run(String key, Operation operation, InstanceLocks.Lock lock, Consumer<ProgressReporter> task) {
+		logger.info("Starting operation={} key={}", operation.name, key);
+		try {
+			task.accept(description -> operation.description = description);
+			operation.complete(State.SUCCEEDED, operation.description);
+			logger.info("Succeeded operation={} key={}", operation.name, key);
+		}
+		catch (RuntimeException e) {
+			String description = e instanceof ResponseStatusException responseStatusException
+					? responseStatusException.getReason() : e.getMessage();
+			operation.complete(State.FAILED, description);
+			logger.warn("Failed operation={} key={}", operation.name, key, e);
+		}
+		finally {
+			this.save(key, operation);
+			this.running.remove(key, operation);
+			lock.close();
+		}
+	}
+
+	private ThreadPoolExecutor executor(String serviceId) {
+		AwsService awsService = AwsService.fromServiceId(serviceId);
+		String pool = awsService == null ? serviceId : awsService.name().toLowerCase(Locale.ENGLISH);
+		return this.executors.computeIfAbsent(pool, key -> BoundedExecutors.newExecutor("operation-" + key,
+				this.props.concurrency(), this.props.queueCapacity(), false, this.meterRegistry));
+	}
+
+	private void saveRunning() {
+		this.running.forEach(this::save);
+	}
+
+	private void save(String key, Operation operation) {
+		try {
+			this.operationStore.save(key,
+					new OperationRecord(operation.name, operation.state, operation.description, Instant.now()));
+		}
+		catch (RuntimeException e) {
+			logger.warn("Failed to save operation={} key={}", operation.name, key, e);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		this.heartbeat.shutdownNow();
+		this.executors.values().forEach(ThreadPoolExecutor::shutdownNow);
+	}
+
+	private static class Operation {
+
+		private final String name;
+
+		private volatile State state = State.IN_PROGRESS;
+
+		@Nullable
+		private volatile String description;
+
+		Operation(String name) {
+			this.name = name;
+		}
+
+		void complete(State state, @Nullable String description) {
+			this.description = description;
+			this.state = state;
+		}
+
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import com.example.awsservicebroker.servicebroker.LastOperation;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Keeps the last asynchronous operation of each service instance or binding.
+ */
+public interface OperationStore {
+
+	Optional<OperationRecord> find(String key);
+
+	void save(String key, OperationRecord record);
+
+	/**
+	 * @param updatedAt when the record was last saved. Running operations are saved
+	 * periodically, so a stale record in progress has been interrupted.
+	 */
+	record OperationRecord(String operation, LastOperation.State state, @Nullable String description,
+			Instant updatedAt) {
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the steps of a provisioning flow on an executor as soon as the steps they depend
+ * on have completed, so that independent AWS calls overlap. If any step fails, the steps
+ * that have completed are compensated in the reverse order of their completion, and the
+ * failure is rethrown by {@link #await()}.
+ */
+class ProvisioningSteps {
+
+	private final Executor executor;
+
+	private final List<CompletableFuture<?>> futures = new ArrayList<>();
+
+	private final Deque<Compensation> compensations = new ConcurrentLinkedDeque<>();
+
+	private final Logger logger = LoggerFactory.getLogger(ProvisioningSteps.class);
+
+	ProvisioningSteps(Executor executor) {
+		this.executor = executor;
+	}
+
+	record Step<T>(String name, CompletableFuture<T> future) {
+
+		/**
+		 * @return the result, only to be called by the steps that depend on this one or
+		 * after {@link #await()}
+		 */
+		T result() {
+			return this.future.join();
+		}
+
+	}
+
+	private record Compensation(String name, Runnable action) {
+	}
+
+	/**
+	 * @param compensation undoes the step with its result if a later step fails
+	 */
+	<T> Step<T> add(String name, Supplier<T> action, Consumer<T> compensation, Step<?>... dependencies) {
+		CompletableFuture<?>[] dependencyFutures = Arrays.stream(dependencies)
+			.map(Step::future)
+			.toArray(CompletableFuture[]::new);
+		CompletableFuture<T> future = CompletableFuture.allOf(dependencyFutures).thenApplyAsync(ignored -> {
+			logger.debug("Running step={}", name);
+			T result = action.get();
+			this.compensations.push(new Compensation(name, () -> compensation.accept(result)));
+			return result;
+		}, this.executor);
+		this.futures.add(future);
+		return new Step<>(name, future);
+	}
+
+	Step<Void> run(String name, Runnable action, Step<?>... dependencies) {
+		return this.add(name, () -> {
+			action.run();
+			return null;
+		}, result -> {
+		}, dependencies);
+	}
+
+	void await() {
+		try {
+			// allOf completes once every step has either completed or been skipped
+			CompletableFuture.allOf(this.futures.toArray(CompletableFuture[]::new)).join();
+		}
+		catch (CompletionException e) {
+			this.compensate();
+			Throwable cause = e;
+			while (cause instanceof CompletionException && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw e;
+		}
+	}
+
+	private void compensate() {
+		Compensation compensation;
+		while ((compensation = this.compensations.poll()) != null) {
+			logger.info("Compensating step={}", compensation.name());
+			try {
+				compensation.action().run();
+			}
+			catch (RuntimeException e) {
+				logger.warn("Failed to compensate step={}", compensation.name(), e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.util.List;
+import java.util.Optional;
+
+import com.example.awsservicebroker.aws.iam.IamService;
+import software.amazon.awssdk.services.iam.model.Tag;
+
+/**
+ * Keeps the state of each instance in a tag on its role. IAM allows 50 tags per role, so
+ * a role can back only about 40 instances besides its own tags.
+ */
+public class RoleTagInstanceStateStore implements InstanceStateStore {
+
+	private final IamService iamService;
+
+	public RoleTagInstanceStateStore(IamService iamService) {
+		this.iamService = iamService;
+	}
+
+	@Override
+	public Optional<InstanceState> find(String key) {
+		return this.iamService.findRoleByTagKey(key)
+			.flatMap(role -> this.iamService.listRoleTags(role.roleName())
+				.stream()
+				.filter(tag -> tag.key().equals(key))
+				.findAny()
+				.map(tag -> new InstanceState(role.roleName(), tag.value())));
+	}
+
+	@Override
+	public void save(String key, InstanceState state) {
+		if (!state.bindingIds().isEmpty()) {
+			throw new IllegalStateException("Binding ids cannot be kept in role tags");
+		}
+		this.iamService.addRoleTags(state.roleName(), List.of(Tag.builder().key(key).value(state.value()).build()));
+	}
+
+	@Override
+	public void delete(String key) {
+		this.iamService.findRoleByTagKey(key)
+			.ifPresent(role -> this.iamService.removeRoleTags(role.roleName(), List.of(key)));
+	}
+
+}
@@ -0,0 +1,133 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Keeps the state of each instance as a JSON object in the broker's state bucket, so a
+ * role can back any number of instances and an instance is found with one
+ * {@code GetObject} instead of a search by tag. Instances provisioned before the switch
+ * are found in the role tags they were given and moved into the bucket on first access.
+ * {@link #update} writes only if the object still has the ETag it was read with, so broker
+ * instances sharing the bucket do not overwrite each other's binding counts.
+ */
+public class S3InstanceStateStore implements InstanceStateStore {
+
+	private static final String KEY_PREFIX = "instances/";
+
+	private static final int MAX_UPDATE_ATTEMPTS = 10;
+
+	private final S3Client s3Client;
+
+	private final String bucketName;
+
+	private final ObjectMapper objectMapper;
+
+	private final InstanceStateStore legacyStore;
+
+	public S3InstanceStateStore(S3Client s3Client, String bucketName, ObjectMapper objectMapper,
+			InstanceStateStore legacyStore) {
+		this.s3Client = s3Client;
+		this.bucketName = bucketName;
+		this.objectMapper = objectMapper;
+		this.legacyStore = legacyStore;
+	}
+
+	@Override
+	public Optional<InstanceState> find(String key) {
+		return this.get(key).or(() -> this.legacyStore.find(key).map(state -> {
+			this.save(key, state);
+			this.legacyStore.delete(key);
+			return state;
+		}));
+	}
+
+	@Override
+	public void save(String key, InstanceState state) {
+		this.put(key, state, null);
+	}
+
+	@Override
+	public Optional<InstanceState> update(String key, UnaryOperator<InstanceState> update) {
+		if (this.find(key).isEmpty()) {
+			return Optional.empty();
+		}
+		for (int attempt = 1; attempt <= MAX_UPDATE_ATTEMPTS; attempt++) {
+			Optional<Versioned> current = this.getVersioned(key);
+			if (current.isEmpty()) {
+				return Optional.empty();
+			}
+			InstanceState updated = update.apply(current.get().state());
+			try {
+				this.put(key, updated, current.get().eTag());
+				return Optional.of(updated);
+			}
+			catch (S3Exception e) {
+				// 412 if the object has changed, 409 if it is being written, 404 if deleted
+				if (e.statusCode() != 412 && e.statusCode() != 409 && e.statusCode() != 404) {
+					throw e;
+				}
+			}
+		}
+		throw new ConcurrencyException(key);
+	}
+
+	@Override
+	public void delete(String key) {
+		this.s3Client.deleteObject(builder -> builder.bucket(this.bucketName).key(KEY_PREFIX + key + ".json"));
+	}
+
+	private Optional<InstanceState> get(String key) {
+		return this.getVersioned(key).map(Versioned::state);
+	}
+
+	private Optional<Versioned> getVersioned(String key) {
+		try {
+			ResponseBytes<GetObjectResponse> object = this.s3Client
+				.getObjectAsBytes(builder -> builder.bucket(this.bucketName).key(KEY_PREFIX + key + ".json"));
+			InstanceState state = this.objectMapper.readValue(object.asByteArray(), InstanceState.class);
+			return Optional.of(new Versioned(state, object.response().eTag()));
+		}
+		catch (NoSuchKeyException e) {
+			return Optional.empty();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @param eTag the ETag the object must still have, or {@code null} to write
+	 * unconditionally
+	 */
+	private void put(String key, InstanceState state, @Nullable String eTag) {
+		try {
+			byte[] json = this.objectMapper.writeValueAsBytes(state);
+			this.s3Client.putObject(builder -> {
+				builder.bucket(this.bucketName).key(KEY_PREFIX + key + ".json").contentType("application/json");
+				if (eTag != null) {
+					builder.overrideConfiguration(override -> override.putHeader("If-Match", eTag));
+				}
+			}, RequestBody.fromBytes(json));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private record Versioned(InstanceState state, String eTag) {
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+/**
+ * Keeps operations as JSON objects in the broker's state bucket.
+ */
+public class S3OperationStore implements OperationStore {
+
+	private static final String KEY_PREFIX = "operations/";
+
+	private final S3Client s3Client;
+
+	private final String bucketName;
+
+	private final ObjectMapper objectMapper;
+
+	public S3OperationStore(S3Client s3Client, String bucketName, ObjectMapper objectMapper) {
+		this.s3Client = s3Client;
+		this.bucketName = bucketName;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public Optional<OperationRecord> find(String key) {
+		try {
+			ResponseBytes<GetObjectResponse> object = this.s3Client
+				.getObjectAsBytes(builder -> builder.bucket(this.bucketName).key(KEY_PREFIX + key + ".json"));
+			return Optional.of(this.objectMapper.readValue(object.asByteArray(), OperationRecord.class));
+		}
+		catch (NoSuchKeyException e) {
+			return Optional.empty();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void save(String key, OperationRecord record) {
+		try {
+			byte[] json = this.objectMapper.writeValueAsBytes(record);
+			this.s3Client.putObject(builder -> builder.bucket(this.bucketName)
+				.key(KEY_PREFIX + key + ".json")
+				.contentType("application/json"), RequestBody.fromBytes(json));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
@@ -1,18 +1,33 @@
 package com.example.awsservicebroker.servicebroker.service;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 
+import com.example.awsservicebroker.ServiceBrokerProps;
+import com.example.awsservicebroker.aws.BoundedExecutors;
+import com.example.awsservicebroker.aws.Instance;
+import com.example.awsservicebroker.aws.ProgressReporter;
 import com.example.awsservicebroker.aws.iam.IamService;
+import com.example.awsservicebroker.aws.s3.S3Props;
 import com.example.awsservicebroker.aws.s3.S3Service;
+import com.example.awsservicebroker.aws.s3.S3Service.BucketPendingDeletion;
 import com.example.awsservicebroker.aws.s3.S3Service.CreateBucketResult;
 import com.example.awsservicebroker.servicebroker.AwsService;
 import com.example.awsservicebroker.servicebroker.ServiceBindRequest;
 import com.example.awsservicebroker.servicebroker.ServiceProvisioningRequest;
 import com.example.awsservicebroker.servicebroker.ServiceUpdateRequest;
+import com.example.awsservicebroker.servicebroker.service.ProvisioningSteps.Step;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.iam.model.Role;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
@@ -24,16 +39,37 @@ import static com.example.awsservicebroker.servicebroker.service.ServiceBrokerSe
 import static com.example.awsservicebroker.servicebroker.service.ServiceBrokerService.splitTagValue;
 
 @Component
-public class S3ServiceBrokerService extends AbstractServiceBrokerService {
+public class S3ServiceBrokerService extends AbstractServiceBrokerService implements DisposableBean {
 
 	private final S3Service s3Service;
 
+	private final S3Props s3Props;
+
 	private final ObjectMapper objectMapper;
 
-	public S3ServiceBrokerService(S3Service s3Service, IamService iamService, ObjectMapper objectMapper) {
-		super(iamService);
+	private final ExecutorService provisioningExecutor;
+
+	private final Logger logger = LoggerFactory.getLogger(S3ServiceBrokerService.class);
+
+	public S3ServiceBrokerService(S3Service s3Service, S3Props s3Props, IamService iamService,
+			InstanceStateStore instanceStateStore, ServiceBrokerProps props, ObjectMapper objectMapper,
+			MeterRegistry meterRegistry) {
+		super(iamService, instanceStateStore, props);
 		this.s3Service = s3Service;
+		this.s3Props = s3Props;
 		this.objectMapper = objectMapper;
+		this.provisioningExecutor = BoundedExecutors.newExecutor("s3-provisioning", s3Props.provisioning().threads(),
+				s3Props.provisioning().queueCapacity(), true, meterRegistry);
+	}
+
+	@Override
+	protected String policyDocument(String roleTagValue) {
+		return this.s3Service.buildTrustPolicyForBucket(splitTagValue(roleTagValue)[0]);
+	}
+
+	@Override
+	public void destroy() {
+		this.provisioningExecutor.shutdownNow();
 	}
 
 	@Override
@@ -41,26 +77,51 @@ public class S3ServiceBrokerService extends AbstractServiceBrokerService {
 		return AwsService.S3;
 	}
 
+	@Override
+	public void validateProvisioning(String instanceId, ServiceProvisioningRequest request) {
+		this.bindProvisioningParameters(request);
+	}
+
+	@Override
+	public boolean supportsAsyncProvisioning() {
+		return true;
+	}
+
 	@Override
 	public Map<String, Object> provisioning(String instanceId, ServiceProvisioningRequest request) {
-		ProvisioningParameters params = request.bindParametersTo(ProvisioningParameters.class, this.objectMapper);
-		if (params == null || !StringUtils.hasText(params.roleName())) {
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'role_name' parameter is required");
-		}
+		ProvisioningParameters params = this.bindProvisioningParameters(request);
 		String roleName = params.roleName();
-		super.addRoleTag(roleName, instanceId, () -> {
-			String bucketNameToCreate = params.bucketName();
-			String regionNameToCreate = params.region();
-			CreateBucketResult result = this.s3Service.createBucket(this.buildInstance(instanceId, request),
-					bucketNameToCreate, regionNameToCreate);
-			if (params.enableVersioning()) {
-				this.s3Service.enableVersioning(result.bucketName());
-			}
-			return joinTagValue(result.bucketName(), result.region());
-		});
+		Instance instance = this.buildInstance(instanceId, request);
+		ProvisioningSteps steps = new ProvisioningSteps(this.provisioningExecutor);
+		List<Step<?>> previous = new ArrayList<>();
+		previous.add(steps.run("validate-role", () -> super.validateRole(roleName)));
+		Step<CreateBucketResult> bucket = steps.add("create-bucket",
+				() -> this.s3Service.createBucket(instanceId, params.bucketName(), params.region()),
+				result -> this.s3Service.deleteBucket(result.bucketName()));
+		previous.add(bucket);
+		previous.add(steps.run("tag-bucket",
+				() -> this.s3Service.tagBucket(bucket.result().bucketName(), instance), bucket));
+		if (params.enableVersioning()) {
+			previous.add(steps.run("enable-versioning",
+					() -> this.s3Service.enableVersioning(bucket.result().bucketName()), bucket));
+		}
+		// the role tag makes the instance visible, so it is put once everything else has
+		// succeeded, and the bucket is deleted if putting it fails
+		steps.run("put-role-tag", () -> {
+			CreateBucketResult result = bucket.result();
+			super.putRoleTag(roleName, instanceId, joinTagValue(result.bucketName(), result.region()));
+		}, previous.toArray(new Step<?>[0]));
+		steps.await();
 		return Map.of();
 	}
 
+	@Override
+	public void compensateInterruptedProvisioning(String instanceId) {
+		this.s3Service.deleteBucketByInstanceId(instanceId);
+		// not tagged yet if the provisioning was interrupted right after creating it
+		this.s3Service.deleteBucket(this.s3Service.defaultBucketName(instanceId));
+	}
+
 	@Override
 	public Map<String, Object> update(String instanceId, ServiceUpdateRequest request) {
 		UpdatingParameters params = request.bindParametersTo(UpdatingParameters.class, this.objectMapper);
@@ -93,6 +154,20 @@ public class S3ServiceBrokerService extends AbstractServiceBrokerService {
 		return credentialsWithRole(role, Map.of("bucket_name", bucketName, "region", region));
 	}
 
+	@Override
+	public boolean supportsAsyncBinding() {
+		return true;
+	}
+
+	@Override
+	public Optional<Map<String, Object>> fetchBinding(String instanceId, String bindingId) {
+		return super.findBinding(instanceId, bindingId).map(roleAndRoleTagValue -> {
+			String[] tagValue = splitTagValue(roleAndRoleTagValue.roleTagValue());
+			return credentialsWithRole(roleAndRoleTagValue.role(),
+					Map.of("bucket_name", tagValue[0], "region", tagValue[1]));
+		});
+	}
+
 	@Override
 	public void unbind(String instanceId, String bindingId, String serviceId, String planId) {
 		super.detachInlinePolicy(instanceId, bindingId, () -> {
@@ -102,14 +177,61 @@ public class S3ServiceBrokerService extends AbstractServiceBrokerService {
 
 	@Override
 	public void deprovisioning(String instanceId, String serviceId, String planId) {
+		this.deprovisioning(instanceId, serviceId, planId, ProgressReporter.NONE);
+	}
+
+	@Override
+	public void deprovisioning(String instanceId, String serviceId, String planId,
+			ProgressReporter progressReporter) {
+		if (this.s3Props.deprovision().mode() == S3Props.Deprovision.Mode.EXPIRE) {
+			super.markRoleTagPendingDeletion(instanceId, roleTagValue -> {
+				if (StringUtils.hasText(roleTagValue)) {
+					String bucketName = splitTagValue(roleTagValue)[0];
+					this.s3Service.expireBucket(bucketName);
+				}
+			});
+			return;
+		}
 		super.removeRoleTag(instanceId, roleTagValue -> {
 			if (StringUtils.hasText(roleTagValue)) {
 				String bucketName = splitTagValue(roleTagValue)[0];
-				this.s3Service.deleteBucket(bucketName);
+				this.s3Service.deleteBucket(bucketName, progressReporter);
 			}
 		});
 	}
 
+	@Override
+	public boolean supportsAsyncDeprovisioning() {
+		// expiring takes a constant amount of work
+		return this.s3Props.deprovision().mode() == S3Props.Deprovision.Mode.DELETE;
+	}
+
+	/**
+	 * Deletes the buckets that lifecycle expiration has emptied, then removes the role tags
+	 * of their instances.
+	 */
+	public void finalizePendingDeletions() {
+		for (BucketPendingDeletion bucket : this.s3Service.findBucketsPendingDeletion()) {
+			try {
+				if (this.s3Service.deleteBucketIfEmpty(bucket.bucketName()) && bucket.instanceId() != null) {
+					super.removeRoleTag(bucket.instanceId(), roleTagValue -> {
+					});
+				}
+			}
+			catch (RuntimeException e) {
+				logger.warn("Failed to finalize deletion of bucketName={}", bucket.bucketName(), e);
+			}
+		}
+	}
+
+	private ProvisioningParameters bindProvisioningParameters(ServiceProvisioningRequest request) {
+		ProvisioningParameters params = request.bindParametersTo(ProvisioningParameters.class, this.objectMapper);
+		if (params == null || !StringUtils.hasText(params.roleName())) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'role_name' parameter is required");
+		}
+		return params;
+	}
+
 	public record ProvisioningParameters(@Nullable @JsonProperty("role_name") String roleName,
 			@Nullable @JsonProperty("bucket_name") String bucketName,
 			@Nullable @JsonProperty("enable_versioning") boolean enableVersioning,
@@ -3,8 +3,10 @@ package com.example.awsservicebroker.servicebroker.service;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Optional;
 
 import com.example.awsservicebroker.aws.Instance;
+import com.example.awsservicebroker.aws.ProgressReporter;
 import com.example.awsservicebroker.servicebroker.Context;
 import com.example.awsservicebroker.servicebroker.ServiceBindRequest;
 import com.example.awsservicebroker.servicebroker.ServiceProvisioningRequest;
@@ -44,6 +46,33 @@ public interface ServiceBrokerService {
 		return Map.of();
 	}
 
+	/**
+	 * Rejects an invalid provisioning request before it is run in the background.
+	 */
+	default void validateProvisioning(String instanceId, ServiceProvisioningRequest request) {
+
+	}
+
+	default boolean supportsAsyncProvisioning() {
+		return false;
+	}
+
+	/**
+	 * @return whether the instance has been provisioned, used to settle an asynchronous
+	 * provisioning that a restart has interrupted
+	 */
+	default boolean instanceExists(String instanceId) {
+		return false;
+	}
+
+	/**
+	 * Removes what an asynchronous provisioning that a restart has interrupted may have
+	 * created, as the compensations of its steps were lost with it.
+	 */
+	default void compensateInterruptedProvisioning(String instanceId) {
+
+	}
+
 	default Map<String, Object> update(String instanceId, ServiceUpdateRequest request) {
 		return Map.of();
 	}
@@ -52,10 +81,40 @@ public interface ServiceBrokerService {
 
 	}
 
+	/**
+	 * Deprovisions like {@link #deprovisioning(String, String, String)} while reporting
+	 * progress. Called on a background thread if {@link #supportsAsyncDeprovisioning()}.
+	 * It may be called again for the same instance to resume after a restart.
+	 */
+	default void deprovisioning(String instanceId, String serviceId, String planId,
+			ProgressReporter progressReporter) {
+		this.deprovisioning(instanceId, serviceId, planId);
+	}
+
+	default boolean supportsAsyncDeprovisioning() {
+		return false;
+	}
+
 	default Map<String, Object> bind(String instanceId, String bindingId, ServiceBindRequest request) {
 		return Map.of();
 	}
 
+	/**
+	 * @return whether {@link #bind} may be called on a background thread, with the
+	 * credentials served by {@link #fetchBinding} once it has completed
+	 */
+	default boolean supportsAsyncBinding() {
+		return false;
+	}
+
+	/**
+	 * @return the credentials of a binding that has been created, or empty if it is not
+	 * found
+	 */
+	default Optional<Map<String, Object>> fetchBinding(String instanceId, String bindingId) {
+		return Optional.empty();
+	}
+
 	default void unbind(String instanceId, String bindingId, String serviceId, String planId) {
 
 	}
@@ -0,0 +1,86 @@
+package com.example.awsservicebroker.aws;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AwsCircuitBreakerTest {
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	AwsCircuitBreaker.Circuit circuit = new AwsCircuitBreaker.Circuit("iam", "write",
+			new CircuitBreakerProps(true, 3, Duration.ofMillis(100)), this.meterRegistry);
+
+	@Test
+	void opens_after_consecutive_failures() {
+		this.circuit.onFailure(false);
+		this.circuit.onFailure(false);
+		this.circuit.onSuccess(false);
+		this.circuit.onFailure(false);
+		this.circuit.onFailure(false);
+		assertThat(this.circuit.state()).isEqualTo(AwsCircuitBreaker.State.CLOSED);
+		assertThat(this.circuit.acquire()).isFalse();
+		this.circuit.onFailure(false);
+		assertThat(this.circuit.state()).isEqualTo(AwsCircuitBreaker.State.OPEN);
+		assertThatThrownBy(this.circuit::acquire).isInstanceOfSatisfying(CircuitOpenException.class,
+				e -> assertThat(e.retryAfter()).isPositive().isLessThanOrEqualTo(Duration.ofMillis(100)));
+		assertThat(this.meterRegistry.counter("aws.circuit.rejected", "service", "iam", "operations", "write").count())
+			.isEqualTo(1);
+	}
+
+	@Test
+	void outcomes_of_calls_in_flight_are_ignored_while_open() {
+		this.open();
+		this.circuit.onSuccess(false);
+		assertThat(this.circuit.state()).isEqualTo(AwsCircuitBreaker.State.OPEN);
+		this.circuit.onFailure(false);
+		assertThat(this.circuit.state()).isEqualTo(AwsCircuitBreaker.State.OPEN);
+	}
+
+	@Test
+	void half_open_lets_one_probe_through() throws Exception {
+		this.open();
+		Thread.sleep(150);
+		assertThat(this.circuit.acquire()).isTrue();
+		assertThat(this.circuit.state()).isEqualTo(AwsCircuitBreaker.State.HALF_OPEN);
+		assertThatThrownBy(this.circuit::acquire).isInstanceOf(CircuitOpenException.class);
+		// only the probe's outcome counts
+		this.circuit.onSuccess(false);
+		this.circuit.onFailure(false);
+		assertThat(this.circuit.state()).isEqualTo(AwsCircuitBreaker.State.HALF_OPEN);
+		this.circuit.onSuccess(true);
+		assertThat(this.circuit.state()).isEqualTo(AwsCircuitBreaker.State.CLOSED);
+		assertThat(this.circuit.acquire()).isFalse();
+	}
+
+	@Test
+	void failed_probe_opens_again() throws Exception {
+		this.open();
+		Thread.sleep(150);
+		assertThat(this.circuit.acquire()).isTrue();
+		this.circuit.onFailure(true);
+		assertThat(this.circuit.state()).isEqualTo(AwsCircuitBreaker.State.OPEN);
+		assertThatThrownBy(this.circuit::acquire).isInstanceOf(CircuitOpenException.class);
+	}
+
+	@Test
+	void probe_that_does_not_answer_is_replaced() throws Exception {
+		this.open();
+		Thread.sleep(150);
+		assertThat(this.circuit.acquire()).isTrue();
+		Thread.sleep(150);
+		assertThat(this.circuit.acquire()).isTrue();
+	}
+
+	void open() {
+		for (int i = 0; i < 3; i++) {
+			this.circuit.onFailure(false);
+		}
+		assertThat(this.circuit.state()).isEqualTo(AwsCircuitBreaker.State.OPEN);
+	}
+
+}
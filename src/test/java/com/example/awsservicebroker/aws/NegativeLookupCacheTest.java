@@ -0,0 +1,47 @@
+package com.example.awsservicebroker.aws;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NegativeLookupCacheTest {
+
+	NegativeLookupCache cache = new NegativeLookupCache("test", Duration.ofSeconds(30), new SimpleMeterRegistry());
+
+	@Test
+	void miss_is_remembered() {
+		long generation = this.cache.generation("key");
+		this.cache.markAbsent("key", generation);
+		assertThat(this.cache.isAbsent("key")).isTrue();
+		this.cache.invalidate("key");
+		assertThat(this.cache.isAbsent("key")).isFalse();
+	}
+
+	@Test
+	void miss_of_lookup_overtaken_by_invalidation_is_not_remembered() {
+		long generation = this.cache.generation("key");
+		// the key is created while the lookup is in flight
+		this.cache.invalidate("key");
+		this.cache.markAbsent("key", generation);
+		assertThat(this.cache.isAbsent("key")).isFalse();
+	}
+
+	@Test
+	void miss_of_lookup_overtaken_by_invalidate_all_is_not_remembered() {
+		long generation = this.cache.generation("key");
+		this.cache.invalidateAll();
+		this.cache.markAbsent("key", generation);
+		assertThat(this.cache.isAbsent("key")).isFalse();
+	}
+
+	@Test
+	void zero_ttl_disables_cache() {
+		NegativeLookupCache disabled = new NegativeLookupCache("test", Duration.ZERO, new SimpleMeterRegistry());
+		disabled.markAbsent("key", disabled.generation("key"));
+		assertThat(disabled.isAbsent("key")).isFalse();
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.example.awsservicebroker.aws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+	static final int CALLERS = 4;
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	SingleFlight<String> singleFlight = new SingleFlight<>("test", this.meterRegistry);
+
+	ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+	CountDownLatch release = new CountDownLatch(1);
+
+	AtomicInteger calls = new AtomicInteger();
+
+	@AfterEach
+	void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	void concurrent_callers_share_one_call() throws Exception {
+		List<Future<String>> results = this.callConcurrently("key", () -> "value-" + this.calls.get());
+		for (Future<String> result : results) {
+			assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("value-1");
+		}
+		assertThat(this.calls).hasValue(1);
+	}
+
+	@Test
+	void concurrent_callers_share_one_exception() throws Exception {
+		IllegalStateException failure = new IllegalStateException("Rate exceeded");
+		List<Future<String>> results = this.callConcurrently("key", () -> {
+			throw failure;
+		});
+		for (Future<String> result : results) {
+			assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+				.isInstanceOf(ExecutionException.class)
+				.hasCause(failure);
+		}
+		assertThat(this.calls).hasValue(1);
+	}
+
+	@Test
+	void calls_for_different_keys_are_not_shared() {
+		this.release.countDown();
+		assertThat(this.singleFlight.execute("a", this.counted(() -> "a"))).isEqualTo("a");
+		assertThat(this.singleFlight.execute("b", this.counted(() -> "b"))).isEqualTo("b");
+		assertThat(this.calls).hasValue(2);
+	}
+
+	@Test
+	void finished_call_is_not_shared_with_later_callers() {
+		this.release.countDown();
+		this.singleFlight.execute("key", this.counted(() -> "first"));
+		assertThat(this.singleFlight.execute("key", this.counted(() -> "second"))).isEqualTo("second");
+		assertThat(this.calls).hasValue(2);
+		assertThat(this.coalesced()).isZero();
+	}
+
+	/**
+	 * Calls with the same key from {@link #CALLERS} threads, and releases the supplier once
+	 * every other caller waits for the first one.
+	 */
+	List<Future<String>> callConcurrently(String key, Supplier<String> supplier) throws InterruptedException {
+		List<Future<String>> results = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(this.executor.submit(() -> this.singleFlight.execute(key, this.counted(supplier))));
+		}
+		for (int i = 0; i < 100 && this.coalesced() < CALLERS - 1; i++) {
+			Thread.sleep(50);
+		}
+		assertThat(this.coalesced()).isEqualTo(CALLERS - 1);
+		this.release.countDown();
+		return results;
+	}
+
+	/**
+	 * Counts the call and waits for {@link #release} before it returns.
+	 */
+	Supplier<String> counted(Supplier<String> supplier) {
+		return () -> {
+			this.calls.incrementAndGet();
+			try {
+				this.release.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+			return supplier.get();
+		};
+	}
+
+	double coalesced() {
+		return this.meterRegistry.counter("single.flight.coalesced", "name", "test").count();
+	}
+
+}
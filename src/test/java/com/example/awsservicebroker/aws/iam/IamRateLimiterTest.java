@@ -0,0 +1,96 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.retry.RetryPolicyContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class IamRateLimiterTest {
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	IamRateLimiter.TokenBucket bucket = new IamRateLimiter.TokenBucket("test", 10, 0.5, this.meterRegistry);
+
+	@Test
+	void bucket_starts_with_one_second_of_permits() {
+		assertThat(this.bucket.currentRate()).isEqualTo(10);
+		assertThat(this.bucket.availablePermits()).isEqualTo(10);
+		for (int i = 0; i < 10; i++) {
+			this.bucket.acquire();
+		}
+		assertThat(this.bucket.availablePermits()).isLessThan(1);
+	}
+
+	@Test
+	void acquire_waits_for_a_permit_once_the_bucket_is_empty() {
+		for (int i = 0; i < 11; i++) {
+			this.bucket.acquire();
+		}
+		// the eleventh permit comes about 100ms after the tenth at 10 permits per second
+		assertThat(this.meterRegistry.timer("iam.rate.limit.wait", "budget", "test").max(TimeUnit.MILLISECONDS))
+			.isGreaterThan(50);
+	}
+
+	@Test
+	void throttling_lowers_permits_and_rate() {
+		this.bucket.onThrottled();
+		assertThat(this.bucket.currentRate()).isCloseTo(7, within(1e-9));
+		assertThat(this.bucket.availablePermits()).isLessThanOrEqualTo(7);
+		this.bucket.onThrottled();
+		assertThat(this.bucket.currentRate()).isCloseTo(4.9, within(1e-9));
+		assertThat(this.bucket.availablePermits()).isLessThanOrEqualTo(4.9);
+		assertThat(this.meterRegistry.counter("iam.rate.limit.throttles", "budget", "test").count()).isEqualTo(2);
+	}
+
+	@Test
+	void throttling_does_not_go_below_min_rate() {
+		for (int i = 0; i < 20; i++) {
+			this.bucket.onThrottled();
+		}
+		assertThat(this.bucket.currentRate()).isEqualTo(0.5);
+	}
+
+	@Test
+	void rate_recovers_to_max_rate() {
+		this.bucket.onThrottled();
+		// each success raises the rate by a hundredth of the max rate
+		for (int i = 0; i < 29; i++) {
+			this.bucket.onSuccess();
+		}
+		assertThat(this.bucket.currentRate()).isCloseTo(9.9, within(1e-9));
+		for (int i = 0; i < 10; i++) {
+			this.bucket.onSuccess();
+		}
+		assertThat(this.bucket.currentRate()).isEqualTo(10);
+	}
+
+	@Test
+	void throttling_slows_down_the_budget_of_the_operation() {
+		IamRateLimiter rateLimiter = new IamRateLimiter(new IamProps.RateLimit(true, 20, 10, 0.5),
+				this.meterRegistry);
+		ExecutionAttributes executionAttributes = new ExecutionAttributes();
+		executionAttributes.putAttribute(SdkExecutionAttribute.OPERATION_NAME, "ListRoles");
+		AwsServiceException throttled = AwsServiceException.builder()
+			.awsErrorDetails(AwsErrorDetails.builder().errorCode("Throttling").build())
+			.build();
+		boolean retried = rateLimiter.throttlingAware(context -> true)
+			.shouldRetry(RetryPolicyContext.builder()
+				.exception(throttled)
+				.executionAttributes(executionAttributes)
+				.build());
+		assertThat(retried).isTrue();
+		assertThat(this.meterRegistry.get("iam.rate.limit.rate").tag("budget", "read").gauge().value())
+			.isCloseTo(14, within(1e-9));
+		assertThat(this.meterRegistry.get("iam.rate.limit.rate").tag("budget", "write").gauge().value())
+			.isEqualTo(10);
+	}
+
+}
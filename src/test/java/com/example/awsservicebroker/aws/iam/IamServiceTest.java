@@ -0,0 +1,133 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import com.example.awsservicebroker.aws.LookupBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.ListRolePoliciesRequest;
+import software.amazon.awssdk.services.iam.model.ListRolePoliciesResponse;
+import software.amazon.awssdk.services.iam.model.ListRoleTagsRequest;
+import software.amazon.awssdk.services.iam.model.ListRoleTagsResponse;
+import software.amazon.awssdk.services.iam.model.ListRolesRequest;
+import software.amazon.awssdk.services.iam.model.ListRolesResponse;
+import software.amazon.awssdk.services.iam.model.Role;
+import software.amazon.awssdk.services.iam.model.Tag;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IamServiceTest {
+
+	PagingIamClient iamClient = new PagingIamClient(5, 2);
+
+	IamService iamService = new IamService(this.iamClient, null, props(), new SimpleMeterRegistry());
+
+	@AfterEach
+	void tearDown() {
+		this.iamService.destroy();
+	}
+
+	@Test
+	void scan_stops_after_the_matching_page() {
+		assertThat(this.iamService.findRoleByInstanceId("i2")).map(Role::roleName).contains("r2");
+		assertThat(this.iamClient.listedMarkers).containsExactly(null, "2");
+	}
+
+	@Test
+	void scan_finds_a_role_on_the_last_page() {
+		assertThat(this.iamService.findRoleByInstanceId("i4")).map(Role::roleName).contains("r4");
+		assertThat(this.iamClient.listedMarkers).containsExactly(null, "2", "4");
+	}
+
+	@Test
+	void stream_of_roles_stops_after_the_matching_page() {
+		assertThat(this.iamService.findRoleByPolicyName("policy-r3")).map(Role::roleName).contains("r3");
+		assertThat(this.iamClient.listedMarkers).containsExactly(null, "2");
+	}
+
+	@Test
+	void stream_of_roles_finds_a_role_on_the_last_page() {
+		assertThat(this.iamService.findRoleByPolicyName("policy-r4")).map(Role::roleName).contains("r4");
+		assertThat(this.iamService.findRoleByPolicyName("policy-r5")).isEmpty();
+		assertThat(this.iamClient.listedMarkers).containsExactly(null, "2", "4", null, "2", "4");
+	}
+
+	/**
+	 * Scans the roles one by one, without the index, batching or the Tagging API, so that
+	 * only the paging decides which pages are listed.
+	 */
+	static IamProps props() {
+		return new IamProps("arn:aws:iam::123456789012:oidc-provider/example.com", "cf", "/cf-role/",
+				new IamProps.Index(false, 10000, Duration.ofMinutes(5), false), new IamProps.TagFetch(1, 1000),
+				new IamProps.ScanBatching(false, Duration.ofMillis(10), 2, Duration.ofMinutes(2)),
+				Duration.ofSeconds(30), LookupBackend.SCAN, new IamProps.TaggingApi("us-east-1"),
+				new IamProps.WriteBatching(false, Duration.ofMillis(10), 4, Duration.ofMinutes(1)),
+				new IamProps.RateLimit(false, 20, 10, 0.5));
+	}
+
+	/**
+	 * Lists roles {@code r0} to {@code r<roles - 1>} in pages of {@code pageSize}, where
+	 * role {@code rN} is tagged with {@code instance_id=iN} and has the inline policy
+	 * {@code policy-rN}.
+	 */
+	static class PagingIamClient implements IamClient {
+
+		final List<String> listedMarkers = new CopyOnWriteArrayList<>();
+
+		final int roles;
+
+		final int pageSize;
+
+		PagingIamClient(int roles, int pageSize) {
+			this.roles = roles;
+			this.pageSize = pageSize;
+		}
+
+		@Override
+		public ListRolesResponse listRoles(ListRolesRequest request) {
+			this.listedMarkers.add(request.marker());
+			int from = request.marker() == null ? 0 : Integer.parseInt(request.marker());
+			int to = Math.min(from + this.pageSize, this.roles);
+			return ListRolesResponse.builder()
+				.roles(IntStream.range(from, to)
+					.mapToObj(i -> Role.builder().roleName("r" + i).path("/cf-role/").build())
+					.toList())
+				.isTruncated(to < this.roles)
+				.marker(to < this.roles ? String.valueOf(to) : null)
+				.build();
+		}
+
+		@Override
+		public ListRoleTagsResponse listRoleTags(ListRoleTagsRequest request) {
+			String instanceId = "i" + request.roleName().substring(1);
+			return ListRoleTagsResponse.builder()
+				.tags(Tag.builder().key("instance_id").value(instanceId).build())
+				.isTruncated(false)
+				.build();
+		}
+
+		@Override
+		public ListRolePoliciesResponse listRolePolicies(ListRolePoliciesRequest request) {
+			return ListRolePoliciesResponse.builder()
+				.policyNames("policy-" + request.roleName())
+				.isTruncated(false)
+				.build();
+		}
+
+		@Override
+		public String serviceName() {
+			return SERVICE_NAME;
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
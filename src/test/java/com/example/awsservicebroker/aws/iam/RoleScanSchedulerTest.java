@@ -0,0 +1,77 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.iam.model.Role;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoleScanSchedulerTest {
+
+	CountDownLatch blocked = new CountDownLatch(1);
+
+	CountDownLatch release = new CountDownLatch(1);
+
+	RoleTagScanner scanner = new RoleTagScanner(this::readTags, null, new SimpleMeterRegistry());
+
+	RoleScanScheduler scheduler = new RoleScanScheduler(this.scanner,
+			() -> Stream.of(List.of(role("slow")), List.of(role("foo"))), this::onFetched, Duration.ofMillis(10), 2,
+			new SimpleMeterRegistry());
+
+	@Test
+	void lookups_do_not_wait_for_running_sweep() throws Exception {
+		CompletableFuture<Optional<RoleTagIndex.Entry>> first = this.scheduler.submit(tags -> false);
+		assertThat(this.blocked.await(5, TimeUnit.SECONDS)).isTrue();
+		// "slow" blocks only the first sweep
+		CompletableFuture<Optional<RoleTagIndex.Entry>> second = this.scheduler
+			.submit(tags -> "1".equals(tags.get("instance_id")));
+		assertThat(second.get(5, TimeUnit.SECONDS)).map(entry -> entry.role().roleName()).contains("foo");
+		assertThat(first).isNotDone();
+		this.release.countDown();
+		assertThat(first.get(5, TimeUnit.SECONDS)).isEmpty();
+		this.scheduler.shutdown();
+	}
+
+	@Test
+	void shutdown_fails_waiting_lookups() throws Exception {
+		CompletableFuture<Optional<RoleTagIndex.Entry>> sweeping = this.scheduler.submit(tags -> false);
+		assertThat(this.blocked.await(5, TimeUnit.SECONDS)).isTrue();
+		this.scheduler.shutdown();
+		assertThatThrownBy(() -> sweeping.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+		assertThat(this.scheduler.submit(tags -> true)).isCompletedExceptionally();
+	}
+
+	Map<String, String> readTags(String roleName) {
+		if (!roleName.equals("slow")) {
+			return Map.of("instance_id", "1");
+		}
+		if (this.blocked.getCount() > 0) {
+			this.blocked.countDown();
+			try {
+				this.release.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return Map.of();
+	}
+
+	void onFetched(Role role, Map<String, String> tags) {
+	}
+
+	static Role role(String roleName) {
+		return Role.builder().roleName(roleName).build();
+	}
+
+}
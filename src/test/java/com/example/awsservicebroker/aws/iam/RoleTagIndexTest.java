@@ -0,0 +1,121 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.iam.model.Role;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoleTagIndexTest {
+
+	RoleTagIndex index = new RoleTagIndex(2);
+
+	@Test
+	void find_by_tag() {
+		this.index.put(role("foo"), Map.of("instance_id", "1", "s3-1", "bucket"));
+		assertThat(this.index.findByTag("instance_id", "1")).map(Role::roleName).contains("foo");
+		assertThat(this.index.findByTag("instance_id", "2")).isEmpty();
+		assertThat(this.index.findByTagKey("s3-1")).map(Role::roleName).contains("foo");
+		assertThat(this.index.find(tags -> "bucket".equals(tags.get("s3-1")))).map(Role::roleName).contains("foo");
+	}
+
+	@Test
+	void add_and_remove_tags() {
+		this.index.put(role("foo"), Map.of("instance_id", "1"));
+		assertThat(this.index.addTags("foo", Map.of("s3-1", "bucket"))).isTrue();
+		assertThat(this.index.findByTagKey("s3-1")).map(Role::roleName).contains("foo");
+		assertThat(this.index.removeTags("foo", List.of("s3-1"))).isTrue();
+		assertThat(this.index.findByTagKey("s3-1")).isEmpty();
+		assertThat(this.index.findByTag("instance_id", "1")).map(Role::roleName).contains("foo");
+	}
+
+	@Test
+	void write_to_role_not_indexed_is_reported() {
+		assertThat(this.index.addTags("foo", Map.of("s3-1", "bucket"))).isFalse();
+		assertThat(this.index.removeTags("foo", List.of("s3-1"))).isFalse();
+		assertThat(this.index.findByTagKey("s3-1")).isEmpty();
+		assertThat(this.index.size()).isZero();
+	}
+
+	@Test
+	void complete_after_refresh() {
+		assertThat(this.index.isComplete()).isFalse();
+		this.index.beginRefresh();
+		this.index.completeRefresh(List.of(entry("foo", Map.of("instance_id", "1"))));
+		assertThat(this.index.isComplete()).isTrue();
+		assertThat(this.index.findByTag("instance_id", "1")).map(Role::roleName).contains("foo");
+	}
+
+	@Test
+	void mark_incomplete() {
+		this.index.beginRefresh();
+		this.index.completeRefresh(List.of());
+		this.index.markIncomplete();
+		assertThat(this.index.isComplete()).isFalse();
+	}
+
+	@Test
+	void mark_incomplete_during_refresh_survives_refresh() {
+		this.index.beginRefresh();
+		this.index.markIncomplete();
+		this.index.completeRefresh(List.of(entry("foo", Map.of())));
+		assertThat(this.index.isComplete()).isFalse();
+		this.index.beginRefresh();
+		this.index.completeRefresh(List.of(entry("foo", Map.of())));
+		assertThat(this.index.isComplete()).isTrue();
+	}
+
+	@Test
+	void eviction_during_refresh_survives_refresh() {
+		this.index.beginRefresh();
+		this.index.put(role("foo"), Map.of("instance_id", "1"));
+		this.index.put(role("bar"), Map.of());
+		// evicts foo, which the snapshot read before it was written does not have
+		this.index.put(role("baz"), Map.of());
+		this.index.completeRefresh(List.of(entry("bar", Map.of())));
+		assertThat(this.index.findByTag("instance_id", "1")).isEmpty();
+		assertThat(this.index.isComplete()).isFalse();
+	}
+
+	@Test
+	void eviction_makes_index_incomplete() {
+		this.index.beginRefresh();
+		this.index.completeRefresh(List.of(entry("foo", Map.of()), entry("bar", Map.of())));
+		assertThat(this.index.isComplete()).isTrue();
+		this.index.put(role("baz"), Map.of());
+		assertThat(this.index.size()).isEqualTo(2);
+		assertThat(this.index.isComplete()).isFalse();
+	}
+
+	@Test
+	void writes_during_refresh_win_over_snapshot() {
+		this.index.put(role("foo"), Map.of("instance_id", "1"));
+		this.index.beginRefresh();
+		this.index.addTags("foo", Map.of("s3-1", "bucket"));
+		this.index.put(role("bar"), Map.of("instance_id", "2"));
+		// the snapshot was read before the writes
+		this.index.completeRefresh(List.of(entry("foo", Map.of("instance_id", "1"))));
+		assertThat(this.index.findByTagKey("s3-1")).map(Role::roleName).contains("foo");
+		assertThat(this.index.findByTag("instance_id", "2")).map(Role::roleName).contains("bar");
+	}
+
+	@Test
+	void role_removed_during_refresh_is_not_restored() {
+		this.index.put(role("foo"), Map.of("instance_id", "1"));
+		this.index.beginRefresh();
+		this.index.remove("foo");
+		this.index.completeRefresh(List.of(entry("foo", Map.of("instance_id", "1"))));
+		assertThat(this.index.findByTag("instance_id", "1")).isEmpty();
+	}
+
+	static Role role(String roleName) {
+		return Role.builder().roleName(roleName).build();
+	}
+
+	static RoleTagIndex.Entry entry(String roleName, Map<String, String> tags) {
+		return new RoleTagIndex.Entry(role(roleName), tags);
+	}
+
+}
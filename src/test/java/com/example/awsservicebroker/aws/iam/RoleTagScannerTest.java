@@ -0,0 +1,121 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.iam.model.Role;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoleTagScannerTest {
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	List<String> read = new CopyOnWriteArrayList<>();
+
+	List<String> fetched = new CopyOnWriteArrayList<>();
+
+	@AfterEach
+	void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	void match_cancels_the_remaining_fetches() throws Exception {
+		CountDownLatch blocked = new CountDownLatch(1);
+		RoleTagScanner scanner = new RoleTagScanner(roleName -> {
+			this.read.add(roleName);
+			try {
+				if (roleName.equals("r0")) {
+					// matches once the fetch of r1 is in flight
+					blocked.await();
+					return Map.of("instance_id", "i0");
+				}
+				blocked.countDown();
+				// never answers unless cancelled
+				new CountDownLatch(1).await();
+				return Map.of();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+		}, this.executor, this.meterRegistry);
+		assertThat(scanner.scan(Stream.of(roles(5)), tags -> tags.containsKey("instance_id"), this::onFetched))
+			.map(Role::roleName)
+			.contains("r0");
+		this.executor.shutdown();
+		assertThat(this.executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+		// the fetches still waiting for a thread never ran
+		assertThat(this.read).containsExactlyInAnyOrder("r0", "r1");
+		assertThat(this.fetched).containsExactly("r0");
+		assertThat(this.meterRegistry.counter("iam.tag.fetch.calls").count()).isEqualTo(2);
+		assertThat(this.meterRegistry.counter("iam.tag.fetch.wasted").count()).isEqualTo(1);
+		assertThat(this.meterRegistry.get("iam.tag.fetch.active").gauge().value()).isZero();
+	}
+
+	@Test
+	void scans_every_page_until_a_match() {
+		RoleTagScanner scanner = new RoleTagScanner(this::tagsOf, this.executor, this.meterRegistry);
+		assertThat(scanner.scan(Stream.of(roles(3), roles(3, 6), roles(6, 9)), tags -> tags.containsKey("r4"),
+				this::onFetched))
+			.map(Role::roleName)
+			.contains("r4");
+		// the third page is never fetched
+		assertThat(this.read).hasSizeBetween(5, 6).doesNotContain("r6", "r7", "r8");
+	}
+
+	@Test
+	void without_executor_pages_are_scanned_sequentially() {
+		// iam.tag-fetch.concurrency=1 creates no executor
+		RoleTagScanner scanner = new RoleTagScanner(roleName -> {
+			this.read.add(roleName + "@" + Thread.currentThread().getName());
+			return Map.of(roleName, "");
+		}, null, this.meterRegistry);
+		String caller = Thread.currentThread().getName();
+		assertThat(scanner.scan(Stream.of(roles(5)), tags -> tags.containsKey("r2"), this::onFetched))
+			.map(Role::roleName)
+			.contains("r2");
+		assertThat(this.read).containsExactly("r0@" + caller, "r1@" + caller, "r2@" + caller);
+		assertThat(this.fetched).containsExactly("r0", "r1", "r2");
+		assertThat(this.meterRegistry.counter("iam.tag.fetch.calls").count()).isEqualTo(3);
+		assertThat(this.meterRegistry.counter("iam.tag.fetch.wasted").count()).isZero();
+	}
+
+	@Test
+	void no_match_scans_every_role() {
+		RoleTagScanner scanner = new RoleTagScanner(this::tagsOf, this.executor, this.meterRegistry);
+		assertThat(scanner.scan(Stream.of(roles(3), roles(3, 5)), tags -> false, this::onFetched)).isEmpty();
+		assertThat(this.fetched).containsExactlyInAnyOrder("r0", "r1", "r2", "r3", "r4");
+	}
+
+	Map<String, String> tagsOf(String roleName) {
+		this.read.add(roleName);
+		return Map.of(roleName, "");
+	}
+
+	void onFetched(Role role, Map<String, String> tags) {
+		this.fetched.add(role.roleName());
+	}
+
+	static List<Role> roles(int count) {
+		return roles(0, count);
+	}
+
+	static List<Role> roles(int from, int to) {
+		return IntStream.range(from, to).mapToObj(i -> Role.builder().roleName("r" + i).build()).toList();
+	}
+
+}
@@ -0,0 +1,165 @@
+package com.example.awsservicebroker.aws.iam;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.PutRolePolicyRequest;
+import software.amazon.awssdk.services.iam.model.PutRolePolicyResponse;
+import software.amazon.awssdk.services.iam.model.Tag;
+import software.amazon.awssdk.services.iam.model.TagRoleRequest;
+import software.amazon.awssdk.services.iam.model.TagRoleResponse;
+import software.amazon.awssdk.services.iam.model.UntagRoleRequest;
+import software.amazon.awssdk.services.iam.model.UntagRoleResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoleWriteCoalescerTest {
+
+	RecordingIamClient iamClient = new RecordingIamClient();
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	List<String> written = new CopyOnWriteArrayList<>();
+
+	RoleWriteCoalescer coalescer = new RoleWriteCoalescer(this.iamClient, Duration.ofMillis(100), 2,
+			this.meterRegistry);
+
+	@AfterEach
+	void tearDown() {
+		this.coalescer.shutdown();
+	}
+
+	@Test
+	void writes_to_a_role_are_merged() throws Exception {
+		CompletableFuture
+			.allOf(this.coalescer.tag("r1", List.of(tag("a", "1")), this.written("tag a")),
+					this.coalescer.tag("r1", List.of(tag("b", "2"), tag("a", "3")), this.written("tag a b")),
+					this.coalescer.putPolicy("r1", "p", "first", this.written("put first")),
+					this.coalescer.putPolicy("r1", "p", "second", this.written("put second")))
+			.get(5, TimeUnit.SECONDS);
+		assertThat(this.iamClient.requests).hasSize(2);
+		assertThat(this.iamClient.requests.get(0))
+			.isEqualTo(TagRoleRequest.builder().roleName("r1").tags(tag("a", "3"), tag("b", "2")).build());
+		assertThat(this.iamClient.requests.get(1)).isEqualTo(
+				PutRolePolicyRequest.builder().roleName("r1").policyName("p").policyDocument("second").build());
+		assertThat(this.meterRegistry.counter("iam.role.write.calls").count()).isEqualTo(2);
+		assertThat(this.meterRegistry.summary("iam.role.write.batch.size").totalAmount()).isEqualTo(4);
+		assertThat(this.written).containsExactly("tag a", "tag a b", "put first", "put second");
+	}
+
+	@Test
+	void writes_to_different_roles_are_not_merged() throws Exception {
+		CompletableFuture.allOf(this.coalescer.tag("r1", List.of(tag("a", "1")), this.written("r1")),
+				this.coalescer.tag("r2", List.of(tag("a", "1")), this.written("r2")))
+			.get(5, TimeUnit.SECONDS);
+		assertThat(this.iamClient.requests).containsExactlyInAnyOrder(
+				TagRoleRequest.builder().roleName("r1").tags(tag("a", "1")).build(),
+				TagRoleRequest.builder().roleName("r2").tags(tag("a", "1")).build());
+	}
+
+	@Test
+	void untag_cancels_an_earlier_tag() throws Exception {
+		CompletableFuture
+			.allOf(this.coalescer.tag("r1", List.of(tag("a", "1"), tag("b", "2")), this.written("tag")),
+					this.coalescer.untag("r1", List.of("a"), this.written("untag")))
+			.get(5, TimeUnit.SECONDS);
+		assertThat(this.iamClient.requests).containsExactly(
+				UntagRoleRequest.builder().roleName("r1").tagKeys("a").build(),
+				TagRoleRequest.builder().roleName("r1").tags(tag("b", "2")).build());
+		// the index sees the untag last, as IAM does
+		assertThat(this.written).containsExactly("tag", "untag");
+	}
+
+	@Test
+	void tag_cancels_an_earlier_untag() throws Exception {
+		CompletableFuture.allOf(this.coalescer.untag("r1", List.of("a"), this.written("untag")),
+				this.coalescer.tag("r1", List.of(tag("a", "1")), this.written("tag")))
+			.get(5, TimeUnit.SECONDS);
+		assertThat(this.iamClient.requests)
+			.containsExactly(TagRoleRequest.builder().roleName("r1").tags(tag("a", "1")).build());
+		assertThat(this.written).containsExactly("untag", "tag");
+	}
+
+	@Test
+	void failure_completes_every_waiter() {
+		this.iamClient.failure = AwsServiceException.builder().message("Rate exceeded").build();
+		CompletableFuture<Void> tagged = this.coalescer.tag("r1", List.of(tag("a", "1")), this.written("tag"));
+		CompletableFuture<Void> put = this.coalescer.putPolicy("r1", "p", "document", this.written("put"));
+		assertThatThrownBy(() -> tagged.get(5, TimeUnit.SECONDS)).hasCause(this.iamClient.failure);
+		assertThatThrownBy(() -> put.get(5, TimeUnit.SECONDS)).hasCause(this.iamClient.failure);
+		assertThat(this.iamClient.requests).hasSize(1);
+		assertThat(this.written).isEmpty();
+	}
+
+	@Test
+	void shutdown_fails_waiting_writes() {
+		RoleWriteCoalescer coalescer = new RoleWriteCoalescer(this.iamClient, Duration.ofMinutes(1), 2,
+				this.meterRegistry);
+		CompletableFuture<Void> tagged = coalescer.tag("r1", List.of(tag("a", "1")), this.written("tag"));
+		coalescer.shutdown();
+		assertThatThrownBy(() -> tagged.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+		assertThat(coalescer.tag("r1", List.of(tag("a", "1")), this.written("tag"))).isCompletedExceptionally();
+		assertThat(this.iamClient.requests).isEmpty();
+		assertThat(this.written).isEmpty();
+	}
+
+	Runnable written(String write) {
+		return () -> this.written.add(write);
+	}
+
+	static Tag tag(String key, String value) {
+		return Tag.builder().key(key).value(value).build();
+	}
+
+	static class RecordingIamClient implements IamClient {
+
+		final List<Object> requests = new CopyOnWriteArrayList<>();
+
+		volatile RuntimeException failure;
+
+		@Override
+		public TagRoleResponse tagRole(TagRoleRequest request) {
+			this.record(request);
+			return TagRoleResponse.builder().build();
+		}
+
+		@Override
+		public UntagRoleResponse untagRole(UntagRoleRequest request) {
+			this.record(request);
+			return UntagRoleResponse.builder().build();
+		}
+
+		@Override
+		public PutRolePolicyResponse putRolePolicy(PutRolePolicyRequest request) {
+			this.record(request);
+			return PutRolePolicyResponse.builder().build();
+		}
+
+		void record(Object request) {
+			this.requests.add(request);
+			if (this.failure != null) {
+				throw this.failure;
+			}
+		}
+
+		@Override
+		public String serviceName() {
+			return SERVICE_NAME;
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
@@ -0,0 +1,205 @@
+package com.example.awsservicebroker.aws.s3;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.awsservicebroker.aws.BoundedExecutors;
+import com.example.awsservicebroker.config.TestConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = { "iam.oidc-provider-arn=arn:aws:iam::123456789012:oidc-provider/example.com" })
+@ActiveProfiles("testcontainers")
+@Import(TestConfig.class)
+class BucketEmptierTest {
+
+	@Autowired
+	S3Client s3Client;
+
+	ExecutorService executor = Executors.newCachedThreadPool();
+
+	BucketEmptier bucketEmptier;
+
+	String bucketName = "emptier-" + UUID.randomUUID();
+
+	@BeforeEach
+	void setUp() {
+		this.bucketEmptier = new BucketEmptier(this.s3Client, this.executor, 16, new SimpleMeterRegistry());
+		this.s3Client.createBucket(builder -> builder.bucket(this.bucketName));
+		this.s3Client.putBucketVersioning(builder -> builder.bucket(this.bucketName)
+			.versioningConfiguration(configuration -> configuration.status(BucketVersioningStatus.ENABLED)));
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	void empty_versioned_bucket() {
+		long objects = this.putVersions();
+		assertThat(this.bucketEmptier.empty(this.bucketName)).isEqualTo(objects);
+		this.assertEmptyAndDelete();
+	}
+
+	@Test
+	void empty_versioned_bucket_in_parallel() {
+		long objects = this.putVersions();
+		List<BucketEmptier.Progress> progress = new CopyOnWriteArrayList<>();
+		assertThat(this.bucketEmptier.emptyInParallel(this.bucketName, 2, progress::add)).isEqualTo(objects);
+		assertThat(progress).isNotEmpty();
+		assertThat(progress.stream().mapToLong(BucketEmptier.Progress::deleted).max()).hasValue(objects);
+		this.assertEmptyAndDelete();
+	}
+
+	@Test
+	void empty_flat_bucket_in_parallel() {
+		long objects = this.putFlatVersions("");
+		this.assertEmptiedInParallel(objects);
+	}
+
+	@Test
+	void empty_bucket_with_a_single_prefix_in_parallel() {
+		long objects = this.putFlatVersions("data/");
+		this.assertEmptiedInParallel(objects);
+	}
+
+	@Test
+	void empty_in_parallel_within_max_threads() {
+		long objects = this.putVersions();
+		// as many threads as a single worker takes, and no more
+		ThreadPoolExecutor executor = BoundedExecutors.newExecutor("test-emptying", 2, 2, false,
+				new SimpleMeterRegistry());
+		try {
+			BucketEmptier bucketEmptier = new BucketEmptier(this.s3Client, executor, 2, new SimpleMeterRegistry());
+			assertThat(bucketEmptier.emptyInParallel(this.bucketName, 4, progress -> {
+			})).isEqualTo(objects);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		this.assertEmptyAndDelete();
+	}
+
+	@Test
+	void rejected_worker_cancels_submitted_workers() throws Exception {
+		this.putVersions();
+		RejectingExecutor executor = new RejectingExecutor(1);
+		BucketEmptier bucketEmptier = new BucketEmptier(this.s3Client, executor, 16, new SimpleMeterRegistry());
+		assertThatThrownBy(() -> bucketEmptier.emptyInParallel(this.bucketName, 2, progress -> {
+		})).isInstanceOf(RejectedExecutionException.class);
+		// the worker that was submitted stops instead of emptying its ranges
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+		ListObjectVersionsResponse response = this.s3Client
+			.listObjectVersions(builder -> builder.bucket(this.bucketName));
+		assertThat(response.versions()).isNotEmpty();
+		this.bucketEmptier.empty(this.bucketName);
+		this.assertEmptyAndDelete();
+	}
+
+	/**
+	 * Puts more versions and delete markers than fit in one {@code DeleteObjects} batch,
+	 * under two prefixes and at the top level.
+	 * @return the number of versions and delete markers
+	 */
+	long putVersions() {
+		long objects = 0;
+		for (String key : List.of("a/object", "b/object", "object")) {
+			for (int i = 0; i < 400; i++) {
+				this.s3Client.putObject(builder -> builder.bucket(this.bucketName).key(key),
+						RequestBody.fromString(String.valueOf(i)));
+				objects++;
+			}
+			this.s3Client.deleteObject(builder -> builder.bucket(this.bucketName).key(key));
+			objects++;
+		}
+		assertThat(objects).isGreaterThan(BucketEmptier.BATCH_SIZE);
+		return objects;
+	}
+
+	/**
+	 * Puts more versions and delete markers than fit in one {@code DeleteObjects} batch,
+	 * under many keys with the given prefix.
+	 * @return the number of versions and delete markers
+	 */
+	long putFlatVersions(String prefix) {
+		long objects = 0;
+		for (int k = 0; k < 12; k++) {
+			String key = "%sobject-%02d".formatted(prefix, k);
+			for (int i = 0; i < 100; i++) {
+				this.s3Client.putObject(builder -> builder.bucket(this.bucketName).key(key),
+						RequestBody.fromString(String.valueOf(i)));
+				objects++;
+			}
+			this.s3Client.deleteObject(builder -> builder.bucket(this.bucketName).key(key));
+			objects++;
+		}
+		assertThat(objects).isGreaterThan(BucketEmptier.BATCH_SIZE);
+		return objects;
+	}
+
+	/**
+	 * Empties the bucket on two workers, and checks that it was split into several key
+	 * ranges, since the remaining objects are only estimated once a range is done.
+	 */
+	void assertEmptiedInParallel(long objects) {
+		List<BucketEmptier.Progress> progress = new CopyOnWriteArrayList<>();
+		assertThat(this.bucketEmptier.emptyInParallel(this.bucketName, 2, progress::add)).isEqualTo(objects);
+		assertThat(progress).anyMatch(p -> p.remainingEstimate() != null);
+		this.assertEmptyAndDelete();
+	}
+
+	void assertEmptyAndDelete() {
+		ListObjectVersionsResponse response = this.s3Client
+			.listObjectVersions(builder -> builder.bucket(this.bucketName));
+		assertThat(response.versions()).isEmpty();
+		assertThat(response.deleteMarkers()).isEmpty();
+		this.s3Client.deleteBucket(builder -> builder.bucket(this.bucketName));
+	}
+
+	/**
+	 * Rejects every task after the first {@code accepted}, as a full pool would.
+	 */
+	static class RejectingExecutor extends ThreadPoolExecutor {
+
+		final AtomicInteger remaining;
+
+		RejectingExecutor(int accepted) {
+			super(4, 4, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+			this.remaining = new AtomicInteger(accepted);
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			if (this.remaining.getAndDecrement() <= 0) {
+				throw new RejectedExecutionException("Rejected by test");
+			}
+			super.execute(command);
+		}
+
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.example.awsservicebroker.config;
+
+import com.example.awsservicebroker.ServiceBrokerProps;
+import com.example.awsservicebroker.ServiceBrokerProps.BindingPolicy;
+import com.example.awsservicebroker.ServiceBrokerProps.InstanceStateBackend;
+import com.example.awsservicebroker.servicebroker.service.RoleTagInstanceStateStore;
+import com.example.awsservicebroker.servicebroker.service.S3InstanceStateStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.core.io.ClassPathResource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StateConfigTest {
+
+	StateConfig stateConfig = new StateConfig();
+
+	@Test
+	void role_tag_with_per_binding_policy() {
+		assertThat(this.instanceStateStore(null, InstanceStateBackend.ROLE_TAG, BindingPolicy.PER_BINDING))
+			.isInstanceOf(RoleTagInstanceStateStore.class);
+	}
+
+	@Test
+	void role_tag_with_shared_policies_is_rejected() {
+		assertThatThrownBy(
+				() -> this.instanceStateStore("state", InstanceStateBackend.ROLE_TAG, BindingPolicy.PER_INSTANCE))
+			.isInstanceOf(IllegalStateException.class)
+			.hasMessage("'service-broker.binding-policy' PER_INSTANCE requires 'service-broker.instance-state' "
+					+ "state-bucket");
+		assertThatThrownBy(() -> this.instanceStateStore("state", InstanceStateBackend.ROLE_TAG, BindingPolicy.MANAGED))
+			.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void state_bucket() {
+		assertThat(this.instanceStateStore("state", InstanceStateBackend.STATE_BUCKET, BindingPolicy.MANAGED))
+			.isInstanceOf(S3InstanceStateStore.class);
+	}
+
+	@Test
+	void state_bucket_without_bucket_is_rejected() {
+		assertThatThrownBy(
+				() -> this.instanceStateStore(null, InstanceStateBackend.STATE_BUCKET, BindingPolicy.PER_BINDING))
+			.isInstanceOf(IllegalStateException.class)
+			.hasMessage("'service-broker.state-bucket' is required when 'service-broker.instance-state' is "
+					+ "state-bucket");
+	}
+
+	Object instanceStateStore(String stateBucket, InstanceStateBackend instanceState, BindingPolicy bindingPolicy) {
+		ServiceBrokerProps props = new ServiceBrokerProps(new ClassPathResource("catalog.yaml"), stateBucket,
+				new ServiceBrokerProps.Operations(16, 1000), instanceState, bindingPolicy);
+		return this.stateConfig.instanceStateStore(props, null, null, new ObjectMapper());
+	}
+
+}
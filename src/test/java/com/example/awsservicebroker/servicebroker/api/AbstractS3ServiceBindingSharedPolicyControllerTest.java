@@ -0,0 +1,172 @@
+package com.example.awsservicebroker.servicebroker.api;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.example.awsservicebroker.aws.Instance;
+import com.example.awsservicebroker.aws.iam.IamService;
+import com.example.awsservicebroker.aws.s3.S3Service;
+import com.example.awsservicebroker.servicebroker.AwsService;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.Role;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.BucketAlreadyOwnedByYouException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Binds an instance twice and unbinds it again under each binding policy that shares
+ * one policy between the bindings of an instance.
+ */
+abstract class AbstractS3ServiceBindingSharedPolicyControllerTest {
+
+	static final String STATE_BUCKET = "aws-service-broker-state";
+
+	RestClient restClient;
+
+	@Autowired
+	IamService iamService;
+
+	@Autowired
+	IamClient iamClient;
+
+	@Autowired
+	S3Service s3Service;
+
+	String instanceId = "a2148c98-7d28-4bb6-853c-7761db9b9d5c";
+
+	String instanceName = "foo";
+
+	String serviceId = AwsService.S3.serviceId();
+
+	String planId = "a42e2c0c-64e0-41c5-a59c-be52c592812e";
+
+	String organizationGuid = "4b84793c-f3ea-4a55-92b7-942726aac163";
+
+	String spaceGuid = "34e1bb23-0e76-4aad-95d7-1abe3ea1dcd8";
+
+	String organizationName = "demo";
+
+	String spaceName = "test";
+
+	@BeforeEach
+	void setUp(@Autowired RestClient.Builder restClientBuilder, @LocalServerPort int port,
+			@Autowired S3Client s3Client) {
+		this.restClient = restClientBuilder.baseUrl("http://localhost:" + port).build();
+		try {
+			s3Client.createBucket(builder -> builder.bucket(STATE_BUCKET));
+		}
+		catch (BucketAlreadyOwnedByYouException e) {
+			// created by a previous test
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.iamService.deleteIamRoleByOrgNameAndSpaceName(organizationName, spaceName);
+		this.s3Service.deleteBucketByInstanceId(instanceId);
+	}
+
+	@Test
+	void bindings_share_one_policy_until_the_last_unbind() {
+		Role role = this.iamService.createIamRole(Instance.builder()
+			.instanceId(UUID.randomUUID().toString())
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build());
+		ResponseEntity<JsonNode> provisioned = this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}", instanceId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "parameters": {
+					    "role_name": "%s"
+					  }
+					}
+					""".formatted(serviceId, planId, organizationGuid, spaceGuid, organizationName, spaceName,
+					instanceName, role.roleName()))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(provisioned.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		String bindingId1 = UUID.randomUUID().toString();
+		String bindingId2 = UUID.randomUUID().toString();
+		assertThat(this.bind(bindingId1).getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(this.bind(bindingId2).getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(this.instancePolicies(role)).containsExactly(this.instancePolicy(role));
+		assertThat(this.unbind(bindingId1).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(this.instancePolicies(role)).containsExactly(this.instancePolicy(role));
+		assertThat(this.unbind(bindingId2).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(this.instancePolicies(role)).isEmpty();
+		assertThat(this.listRolePolicyNames(role)).isEmpty();
+		ResponseEntity<JsonNode> deprovisioned = this.restClient.delete()
+			.uri("/v2/service_instances/{instanceId}?service_id={serviceId}&plan_id={planId}", instanceId, serviceId,
+					planId)
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(deprovisioned.getStatusCode()).isEqualTo(HttpStatus.OK);
+		this.assertInstancePolicyDeleted(role);
+	}
+
+	/**
+	 * @return the policy shared by the bindings of the instance
+	 */
+	abstract String instancePolicy(Role role);
+
+	/**
+	 * @return the policies of the role that grant access to an instance
+	 */
+	abstract List<String> instancePolicies(Role role);
+
+	abstract void assertInstancePolicyDeleted(Role role);
+
+	ResponseEntity<JsonNode> bind(String bindingId) {
+		return this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}/service_bindings/{bindingId}", instanceId, bindingId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s"
+					}
+					""".formatted(serviceId, planId))
+			.retrieve()
+			.toEntity(JsonNode.class);
+	}
+
+	ResponseEntity<JsonNode> unbind(String bindingId) {
+		return this.restClient.delete()
+			.uri("/v2/service_instances/{instanceId}/service_bindings/{bindingId}?service_id={serviceId}&plan_id={planId}",
+					instanceId, bindingId, serviceId, planId)
+			.retrieve()
+			.toEntity(JsonNode.class);
+	}
+
+	List<String> listRolePolicyNames(Role role) {
+		return this.iamClient.listRolePolicies(builder -> builder.roleName(role.roleName())).policyNames();
+	}
+
+}
@@ -2,6 +2,7 @@ package com.example.awsservicebroker.servicebroker.api;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 import com.example.awsservicebroker.aws.Instance;
 import com.example.awsservicebroker.aws.dynamodb.DynamodbService;
@@ -258,6 +259,121 @@ public class DynamodbServiceInstanceControllerTest {
 		assertThat(tableNames).doesNotContain(tablePrefix + "movie2");
 	}
 
+	@Test
+	void deprovisioning_many_tables() {
+		Role role = this.provisionWithRoleName();
+		String tablePrefix = "cf-" + StringUtils.removeHyphen(instanceId) + "-";
+		List<String> tables = this.createTables(tablePrefix, 5);
+		// sorts right after the instance's tables, but does not belong to it
+		String neighbour = tablePrefix.substring(0, tablePrefix.length() - 1) + "_movie";
+		this.dynamoDbEnhancedClient.table(neighbour, TableSchema.fromBean(Movie.class)).createTable();
+		try {
+			ResponseEntity<JsonNode> response = this.restClient.delete()
+				.uri("/v2/service_instances/{instanceId}?service_id={serviceId}&plan_id={planId}", instanceId,
+						serviceId, planId)
+				.retrieve()
+				.toEntity(JsonNode.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+			List<Tag> tags = this.iamClient.listRoleTags(builder -> builder.roleName(role.roleName())).tags();
+			assertThat(tags).doesNotContain(
+					Tag.builder().key(AwsService.DYNAMODB.roleTagKey(instanceId)).value(tablePrefix).build());
+			List<String> tableNames = this.dynamoDbClient.listTables().tableNames();
+			assertThat(tableNames).doesNotContainAnyElementsOf(tables);
+			assertThat(tableNames).contains(neighbour);
+		}
+		finally {
+			this.dynamoDbClient.deleteTable(builder -> builder.tableName(neighbour));
+		}
+	}
+
+	@Test
+	void deprovisioning_accepts_incomplete() throws Exception {
+		Role role = this.provisionWithRoleName();
+		String tablePrefix = "cf-" + StringUtils.removeHyphen(instanceId) + "-";
+		List<String> tables = this.createTables(tablePrefix, 3);
+		ResponseEntity<JsonNode> response = this.restClient.delete()
+			.uri("/v2/service_instances/{instanceId}?service_id={serviceId}&plan_id={planId}&accepts_incomplete=true",
+					instanceId, serviceId, planId)
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		JsonNode body = response.getBody();
+		assertThat(body).isNotNull();
+		JsonNode lastOperation = this.awaitLastOperation(body.get("operation").asText());
+		assertThat(lastOperation.get("state").asText()).isEqualTo("succeeded");
+		assertThat(lastOperation.get("description").asText()).isEqualTo("Deleted 3 of 3 tables");
+		List<Tag> tags = this.iamClient.listRoleTags(builder -> builder.roleName(role.roleName())).tags();
+		assertThat(tags)
+			.doesNotContain(Tag.builder().key(AwsService.DYNAMODB.roleTagKey(instanceId)).value(tablePrefix).build());
+		assertThat(this.dynamoDbClient.listTables().tableNames()).doesNotContainAnyElementsOf(tables);
+	}
+
+	Role provisionWithRoleName() {
+		Role role = this.iamService.createIamRole(Instance.builder()
+			.instanceId(UUID.randomUUID().toString())
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build());
+		ResponseEntity<JsonNode> response = this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}", instanceId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "parameters": {
+					    "role_name": "%s"
+					  },
+					  "organization_guid": "%s",
+					  "space_guid": "%s",
+					  "maintenance_info": {
+					    "version": "2.1.1+abcdef"
+					  }
+					}
+					""".formatted(serviceId, planId, organizationGuid, spaceGuid, organizationName, spaceName,
+					instanceName, role.roleName(), organizationGuid, spaceGuid))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		return role;
+	}
+
+	List<String> createTables(String tablePrefix, int count) {
+		List<String> tables = IntStream.rangeClosed(1, count).mapToObj(i -> tablePrefix + "movie" + i).toList();
+		tables.forEach(table -> this.dynamoDbEnhancedClient.table(table, TableSchema.fromBean(Movie.class))
+			.createTable());
+		assertThat(this.dynamoDbClient.listTables().tableNames()).containsAll(tables);
+		return tables;
+	}
+
+	JsonNode awaitLastOperation(String operation) throws InterruptedException {
+		JsonNode lastOperation = null;
+		for (int i = 0; i < 60; i++) {
+			lastOperation = this.restClient.get()
+				.uri("/v2/service_instances/{instanceId}/last_operation?service_id={serviceId}&plan_id={planId}&operation={operation}",
+						instanceId, serviceId, planId, operation)
+				.retrieve()
+				.body(JsonNode.class);
+			assertThat(lastOperation).isNotNull();
+			if (!lastOperation.get("state").asText().equals("in progress")) {
+				break;
+			}
+			Thread.sleep(500);
+		}
+		return lastOperation;
+	}
+
 	@DynamoDbBean
 	public static class Movie {
 
@@ -4,6 +4,7 @@ import com.example.awsservicebroker.aws.Instance;
 import com.example.awsservicebroker.config.TestConfig;
 import com.example.awsservicebroker.aws.iam.IamService;
 import com.example.awsservicebroker.servicebroker.AwsService;
+import com.example.awsservicebroker.servicebroker.service.InstanceLocks;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import org.junit.jupiter.api.AfterEach;
@@ -37,6 +38,9 @@ class IamRoleServiceBindingControllerTest {
 	@Autowired
 	IamService iamService;
 
+	@Autowired
+	InstanceLocks instanceLocks;
+
 	String instanceId = "a2148c98-7d28-4bb6-853c-7761db9b9d5c";
 
 	String instanceName = "foo";
@@ -109,6 +113,39 @@ class IamRoleServiceBindingControllerTest {
 			.matches("arn:aws:iam::\\d+:role/cf-role/cf_demo_test_foo");
 	}
 
+	@Test
+	void bind_with_context() {
+		ResponseEntity<JsonNode> response = this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}/service_bindings/{bindingId}", instanceId, bindingId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "bind_resource": {
+					    "app_guid": "%s"
+					  }
+					}
+					""".formatted(organizationGuid, spaceGuid, organizationName, spaceName, instanceName, serviceId,
+					planId, appGuid))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		JsonNode body = response.getBody();
+		assertThat(body).isNotNull();
+		assertThat(body.get("credentials").get("role_name")).isEqualTo(new TextNode("cf_demo_test_foo"));
+		assertThat(body.get("credentials").get("role_arn").asText())
+			.matches("arn:aws:iam::\\d+:role/cf-role/cf_demo_test_foo");
+	}
+
 	@Test
 	void unbind() {
 		ResponseEntity<JsonNode> response = this.restClient.delete()
@@ -119,4 +156,39 @@ class IamRoleServiceBindingControllerTest {
 		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
 	}
 
+	@Test
+	void bind_and_unbind_while_instance_is_locked() {
+		try (InstanceLocks.Lock lock = this.instanceLocks.lock(instanceId)) {
+			ResponseEntity<JsonNode> response = this.restClient.put()
+				.uri("/v2/service_instances/{instanceId}/service_bindings/{bindingId}", instanceId, bindingId)
+				.contentType(MediaType.APPLICATION_JSON)
+				.body("""
+						{
+						  "service_id": "%s",
+						  "plan_id": "%s",
+						  "bind_resource": {
+						    "app_guid": "%s"
+						  }
+						}
+						""".formatted(serviceId, planId, appGuid))
+				.retrieve()
+				.toEntity(JsonNode.class);
+			assertConcurrencyError(response);
+			response = this.restClient.delete()
+				.uri("/v2/service_instances/{instanceId}/service_bindings/{bindingId}?service_id={serviceId}&plan_id={planId}",
+						instanceId, bindingId, serviceId, planId)
+				.retrieve()
+				.toEntity(JsonNode.class);
+			assertConcurrencyError(response);
+		}
+	}
+
+	static void assertConcurrencyError(ResponseEntity<JsonNode> response) {
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+		JsonNode body = response.getBody();
+		assertThat(body).isNotNull();
+		assertThat(body.get("error").asText()).isEqualTo("ConcurrencyError");
+		assertThat(body.get("description").asText()).contains("is in progress");
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.example.awsservicebroker.servicebroker.api;
+
+import java.util.Optional;
+
+import com.example.awsservicebroker.aws.Instance;
+import com.example.awsservicebroker.aws.iam.IamService;
+import com.example.awsservicebroker.config.TestConfig;
+import com.example.awsservicebroker.servicebroker.AwsService;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.iam.model.Role;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,
+		properties = { "iam.oidc-provider-arn=arn:aws:iam::123456789012:oidc-provider/example.com",
+				"iam.lookup-backend=tagging-api", "iam.index.enabled=false" })
+@ActiveProfiles("testcontainers")
+@Import(TestConfig.class)
+class IamRoleServiceInstanceTaggingApiControllerTest {
+
+	RestClient restClient;
+
+	@Autowired
+	IamService iamService;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	String instanceId = "a2148c98-7d28-4bb6-853c-7761db9b9d5c";
+
+	String instanceName = "foo";
+
+	String serviceId = AwsService.IAM_ROLE.serviceId();
+
+	String planId = "0ed05edb-7e48-4ad9-bded-8fe37638e2e3";
+
+	String organizationGuid = "4b84793c-f3ea-4a55-92b7-942726aac163";
+
+	String spaceGuid = "34e1bb23-0e76-4aad-95d7-1abe3ea1dcd8";
+
+	String organizationName = "demo";
+
+	String spaceName = "test";
+
+	@BeforeEach
+	void setUp(@Autowired RestClient.Builder restClientBuilder, @LocalServerPort int port) {
+		this.restClient = restClientBuilder.baseUrl("http://localhost:" + port).build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.iamService.deleteIamRoleByOrgNameAndSpaceName(organizationName, spaceName);
+	}
+
+	@Test
+	void provisioning() {
+		assertThat(this.iamService.findRoleByInstanceId(instanceId)).isEmpty();
+		ResponseEntity<JsonNode> response = this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}", instanceId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "organization_guid": "%s",
+					  "space_guid": "%s",
+					  "maintenance_info": {
+					    "version": "2.1.1+abcdef"
+					  }
+					}
+					""".formatted(serviceId, planId, organizationGuid, spaceGuid, organizationName, spaceName,
+					instanceName, organizationGuid, spaceGuid))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		double hits = this.taggingApiHits();
+		double scannedRoles = this.scannedRoles();
+		Optional<Role> roleOptional = this.iamService.findRoleByInstanceId(instanceId);
+		assertThat(roleOptional).isNotEmpty();
+		Role role = roleOptional.get();
+		assertThat(role.roleName()).isEqualTo("cf_demo_test_foo");
+		assertThat(this.iamService.findRoleByOrgNameAndSpaceName(organizationName, spaceName)).contains(role);
+		// both lookups were answered by the Tagging API, not by the scan fallback
+		assertThat(this.taggingApiHits()).isEqualTo(hits + 2);
+		assertThat(this.scannedRoles()).isEqualTo(scannedRoles);
+	}
+
+	@Test
+	void deprovisioning() {
+		this.iamService.createIamRole(Instance.builder()
+			.instanceId(instanceId)
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build());
+		assertThat(this.iamService.findRoleByInstanceId(instanceId)).isNotEmpty();
+		ResponseEntity<JsonNode> response = this.restClient.delete()
+			.uri("/v2/service_instances/{instanceId}?service_id={serviceId}&plan_id={planId}", instanceId, serviceId,
+					planId)
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(this.iamService.findRoleByInstanceId(instanceId)).isEmpty();
+	}
+
+	double taggingApiHits() {
+		return this.meterRegistry.counter("iam.tagging.api.lookups", "result", "hit").count();
+	}
+
+	double scannedRoles() {
+		return this.meterRegistry.counter("iam.tag.fetch.calls").count();
+	}
+
+}
\ No newline at end of file
@@ -151,6 +151,84 @@ class S3ServiceBindingControllerTest {
 		assertThat(policyNames).contains(AwsService.S3.policyName(instanceId, bindingId));
 	}
 
+	@Test
+	void bind_accepts_incomplete() throws Exception {
+		Role role = this.iamService.createIamRole(Instance.builder()
+			.instanceId(UUID.randomUUID().toString())
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build());
+		this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}", instanceId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "parameters": {
+					    "role_name": "%s"
+					  },
+					  "organization_guid": "%s",
+					  "space_guid": "%s",
+					  "maintenance_info": {
+					    "version": "2.1.1+abcdef"
+					  }
+					}
+					""".formatted(serviceId, planId, organizationGuid, spaceGuid, organizationName, spaceName,
+					instanceName, role.roleName(), organizationGuid, spaceGuid))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		ResponseEntity<JsonNode> response = this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}/service_bindings/{bindingId}?accepts_incomplete=true", instanceId,
+					bindingId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "context": {
+					    "platform": "cloudfoundry"
+					  },
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "bind_resource": {
+					    "app_guid": "%s"
+					  },
+					  "parameters": {
+					  }
+					}
+					""".formatted(serviceId, planId, appGuid))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(response.getBody()).isNotNull();
+		String operation = response.getBody().get("operation").asText();
+		JsonNode lastOperation = this.awaitLastOperation(operation);
+		assertThat(lastOperation.get("state").asText()).isEqualTo("succeeded");
+		ResponseEntity<JsonNode> binding = this.restClient.get()
+			.uri("/v2/service_instances/{instanceId}/service_bindings/{bindingId}?service_id={serviceId}&plan_id={planId}",
+					instanceId, bindingId, serviceId, planId)
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(binding.getStatusCode()).isEqualTo(HttpStatus.OK);
+		JsonNode body = binding.getBody();
+		assertThat(body).isNotNull();
+		String bucketName = "cf-" + StringUtils.removeHyphen(instanceId);
+		assertThat(body.get("credentials").get("bucket_name")).isEqualTo(new TextNode(bucketName));
+		assertThat(body.get("credentials").get("region")).isEqualTo(new TextNode("ap-northeast-1"));
+		assertThat(body.get("credentials").get("role_name")).isEqualTo(new TextNode(role.roleName()));
+		assertThat(body.get("credentials").get("role_arn")).isEqualTo(new TextNode(role.arn()));
+	}
+
 	@Test
 	void bind_with_custom_bucket_name() {
 		Role role = this.iamService.createIamRole(Instance.builder()
@@ -296,4 +374,21 @@ class S3ServiceBindingControllerTest {
 		assertThat(policyNames).doesNotContain(AwsService.S3.policyName(instanceId, bindingId));
 	}
 
-}
\ No newline at end of file
+	JsonNode awaitLastOperation(String operation) throws InterruptedException {
+		JsonNode lastOperation = null;
+		for (int i = 0; i < 60; i++) {
+			lastOperation = this.restClient.get()
+				.uri("/v2/service_instances/{instanceId}/service_bindings/{bindingId}/last_operation?service_id={serviceId}&plan_id={planId}&operation={operation}",
+						instanceId, bindingId, serviceId, planId, operation)
+				.retrieve()
+				.body(JsonNode.class);
+			assertThat(lastOperation).isNotNull();
+			if (!lastOperation.get("state").asText().equals("in progress")) {
+				break;
+			}
+			Thread.sleep(500);
+		}
+		return lastOperation;
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.example.awsservicebroker.servicebroker.api;
+
+import java.util.List;
+
+import com.example.awsservicebroker.config.TestConfig;
+import com.example.awsservicebroker.servicebroker.AwsService;
+import software.amazon.awssdk.services.iam.model.AttachedPolicy;
+import software.amazon.awssdk.services.iam.model.NoSuchEntityException;
+import software.amazon.awssdk.services.iam.model.Role;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,
+		properties = { "iam.oidc-provider-arn=arn:aws:iam::123456789012:oidc-provider/example.com",
+				"service-broker.state-bucket=" + AbstractS3ServiceBindingSharedPolicyControllerTest.STATE_BUCKET,
+				"service-broker.instance-state=state-bucket", "service-broker.binding-policy=managed" })
+@ActiveProfiles("testcontainers")
+@Import(TestConfig.class)
+class S3ServiceBindingManagedPolicyControllerTest extends AbstractS3ServiceBindingSharedPolicyControllerTest {
+
+	@Override
+	String instancePolicy(Role role) {
+		return this.iamService.managedPolicyArn(role, AwsService.S3.policyName(instanceId));
+	}
+
+	@Override
+	List<String> instancePolicies(Role role) {
+		return this.iamClient.listAttachedRolePolicies(builder -> builder.roleName(role.roleName()))
+			.attachedPolicies()
+			.stream()
+			.map(AttachedPolicy::policyArn)
+			.toList();
+	}
+
+	@Override
+	void assertInstancePolicyDeleted(Role role) {
+		String policyArn = this.instancePolicy(role);
+		assertThatThrownBy(() -> this.iamClient.getPolicy(builder -> builder.policyArn(policyArn)))
+			.isInstanceOf(NoSuchEntityException.class);
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.example.awsservicebroker.servicebroker.api;
+
+import java.util.List;
+
+import com.example.awsservicebroker.config.TestConfig;
+import com.example.awsservicebroker.servicebroker.AwsService;
+import software.amazon.awssdk.services.iam.model.Role;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,
+		properties = { "iam.oidc-provider-arn=arn:aws:iam::123456789012:oidc-provider/example.com",
+				"service-broker.state-bucket=" + AbstractS3ServiceBindingSharedPolicyControllerTest.STATE_BUCKET,
+				"service-broker.instance-state=state-bucket", "service-broker.binding-policy=per-instance" })
+@ActiveProfiles("testcontainers")
+@Import(TestConfig.class)
+class S3ServiceBindingPerInstancePolicyControllerTest extends AbstractS3ServiceBindingSharedPolicyControllerTest {
+
+	@Override
+	String instancePolicy(Role role) {
+		return AwsService.S3.policyName(instanceId);
+	}
+
+	@Override
+	List<String> instancePolicies(Role role) {
+		return this.listRolePolicyNames(role);
+	}
+
+	@Override
+	void assertInstancePolicyDeleted(Role role) {
+		assertThat(this.listRolePolicyNames(role)).isEmpty();
+	}
+
+}
@@ -1,5 +1,7 @@
 package com.example.awsservicebroker.servicebroker.api;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -9,6 +11,9 @@ import com.example.awsservicebroker.aws.iam.IamService;
 import com.example.awsservicebroker.aws.s3.S3Service;
 import com.example.awsservicebroker.config.TestConfig;
 import com.example.awsservicebroker.servicebroker.AwsService;
+import com.example.awsservicebroker.servicebroker.LastOperation;
+import com.example.awsservicebroker.servicebroker.service.OperationStore;
+import com.example.awsservicebroker.servicebroker.service.OperationStore.OperationRecord;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -60,6 +65,9 @@ class S3ServiceInstanceControllerTest {
 	@Autowired
 	AwsRegionProvider regionProvider;
 
+	@Autowired
+	OperationStore operationStore;
+
 	String bindingId = "8f0b2a93-ca8b-4850-a12a-39a82a17148b";
 
 	String instanceId = "a2148c98-7d28-4bb6-853c-7761db9b9d5c";
@@ -141,6 +149,60 @@ class S3ServiceInstanceControllerTest {
 		assertThat(this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName))).isNotNull();
 	}
 
+	@Test
+	void provisioning_with_role_name_accepts_incomplete() throws Exception {
+		Role role = this.iamService.createIamRole(Instance.builder()
+			.instanceId(UUID.randomUUID().toString())
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build());
+		String bucketName = this.s3Service.defaultBucketName(instanceId);
+		assertThatThrownBy(() -> this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName)))
+			.isInstanceOf(NoSuchBucketException.class);
+		ResponseEntity<JsonNode> response = this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}?accepts_incomplete=true", instanceId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "parameters": {
+					    "role_name": "%s"
+					  },
+					  "organization_guid": "%s",
+					  "space_guid": "%s",
+					  "maintenance_info": {
+					    "version": "2.1.1+abcdef"
+					  }
+					}
+					""".formatted(serviceId, planId, organizationGuid, spaceGuid, organizationName, spaceName,
+					instanceName, role.roleName(), organizationGuid, spaceGuid))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		JsonNode body = response.getBody();
+		assertThat(body).isNotNull();
+		JsonNode lastOperation = this.awaitLastOperation(body.get("operation").asText());
+		assertThat(lastOperation.get("state").asText()).isEqualTo("succeeded");
+		List<Tag> tags = this.iamClient.listRoleTags(builder -> builder.roleName(role.roleName())).tags();
+		assertThat(tags).contains(Tag.builder()
+			.key(AwsService.S3.roleTagKey(instanceId))
+			.value(bucketName + TAG_DELIMITER + this.regionProvider.getRegion().id())
+			.build());
+		assertThat(this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName))).isNotNull();
+	}
+
 	@Test
 	void provisioning_with_role_name_and_bucket_name() {
 		Role role = this.iamService.createIamRole(Instance.builder()
@@ -331,6 +393,10 @@ class S3ServiceInstanceControllerTest {
 		assertThat(body).isNotNull();
 		assertThat(body.has("message")).isTrue();
 		assertThat(body.get("message").asText()).isEqualTo("The given role (role_name=not-exists) is not found");
+		// the bucket created alongside the role validation has been deleted
+		String bucketName = this.s3Service.defaultBucketName(instanceId);
+		assertThatThrownBy(() -> this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName)))
+			.isInstanceOf(NoSuchBucketException.class);
 	}
 
 	@Test
@@ -460,6 +526,147 @@ class S3ServiceInstanceControllerTest {
 			.isInstanceOf(NoSuchBucketException.class);
 	}
 
+	@Test
+	void deprovisioning_accepts_incomplete() throws Exception {
+		Role role = this.iamService.createIamRole(Instance.builder()
+			.instanceId(UUID.randomUUID().toString())
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build());
+		this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}", instanceId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "parameters": {
+					    "role_name": "%s"
+					  },
+					  "organization_guid": "%s",
+					  "space_guid": "%s",
+					  "maintenance_info": {
+					    "version": "2.1.1+abcdef"
+					  }
+					}
+					""".formatted(serviceId, planId, organizationGuid, spaceGuid, organizationName, spaceName,
+					instanceName, role.roleName(), organizationGuid, spaceGuid))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		String bucketName = this.s3Service.defaultBucketName(instanceId);
+		assertThat(this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName))).isNotNull();
+		for (int i = 0; i < 3; i++) {
+			this.s3Service.putObject(bucketName, "test" + i, "This is test" + i);
+		}
+		ResponseEntity<JsonNode> response = this.restClient.delete()
+			.uri("/v2/service_instances/{instanceId}?service_id={serviceId}&plan_id={planId}&accepts_incomplete=true",
+					instanceId, serviceId, planId)
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		JsonNode body = response.getBody();
+		assertThat(body).isNotNull();
+		String operation = body.get("operation").asText();
+		JsonNode lastOperation = this.awaitLastOperation(operation);
+		assertThat(lastOperation.get("state").asText()).isEqualTo("succeeded");
+		assertThat(lastOperation.get("description").asText()).isEqualTo("Deleted 3 objects");
+		List<Tag> tags = this.iamClient.listRoleTags(builder -> builder.roleName(role.roleName())).tags();
+		assertThat(tags).doesNotContain(Tag.builder()
+			.key(AwsService.S3.roleTagKey(instanceId))
+			.value(bucketName + "|" + this.regionProvider.getRegion().id())
+			.build());
+		assertThatThrownBy(() -> this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName)))
+			.isInstanceOf(NoSuchBucketException.class);
+	}
+
+	@Test
+	void last_operation_without_record_does_not_deprovision() {
+		Role role = this.iamService.createIamRole(Instance.builder()
+			.instanceId(UUID.randomUUID().toString())
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build());
+		ResponseEntity<JsonNode> provisioned = this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}", instanceId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "parameters": {
+					    "role_name": "%s"
+					  }
+					}
+					""".formatted(serviceId, planId, organizationGuid, spaceGuid, organizationName, spaceName,
+					instanceName, role.roleName()))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(provisioned.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		this.operationStore.save(instanceId,
+				new OperationRecord("provision", LastOperation.State.SUCCEEDED, null, Instant.now()));
+		ResponseEntity<JsonNode> response = this.restClient.get()
+			.uri("/v2/service_instances/{instanceId}/last_operation?service_id={serviceId}&plan_id={planId}&operation={operation}",
+					instanceId, serviceId, planId, "deprovision")
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.GONE);
+		// a poll never starts a deprovisioning that was not accepted
+		String bucketName = this.s3Service.defaultBucketName(instanceId);
+		assertThat(this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName))).isNotNull();
+		assertThat(this.iamClient.listRoleTags(builder -> builder.roleName(role.roleName())).tags())
+			.anyMatch(tag -> tag.key().equals(AwsService.S3.roleTagKey(instanceId)));
+	}
+
+	@Test
+	void last_operation_without_record_does_not_settle_provisioning() {
+		this.operationStore.save(instanceId,
+				new OperationRecord("deprovision", LastOperation.State.SUCCEEDED, null, Instant.now()));
+		ResponseEntity<JsonNode> response = this.restClient.get()
+			.uri("/v2/service_instances/{instanceId}/last_operation?service_id={serviceId}&plan_id={planId}&operation={operation}",
+					instanceId, serviceId, planId, "provision")
+			.retrieve()
+			.toEntity(JsonNode.class);
+		// it may still be running on another broker instance
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.GONE);
+	}
+
+	@Test
+	void interrupted_provisioning_is_compensated() throws Exception {
+		// interrupted right after creating the bucket, before tagging it
+		String bucketName = this.s3Service.createBucket(instanceId, null, null).bucketName();
+		this.operationStore.save(instanceId, new OperationRecord("provision", LastOperation.State.IN_PROGRESS, null,
+				Instant.now().minus(Duration.ofHours(1))));
+		JsonNode lastOperation = this.awaitLastOperation("provision");
+		assertThat(lastOperation.get("state").asText()).isEqualTo("failed");
+		assertThat(lastOperation.get("description").asText()).isEqualTo("The provisioning was interrupted.");
+		assertThatThrownBy(() -> this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName)))
+			.isInstanceOf(NoSuchBucketException.class);
+		// settled once
+		assertThat(this.awaitLastOperation("provision").get("state").asText()).isEqualTo("failed");
+	}
+
 	@Test
 	void deprovisioning_with_enable_versioning() {
 		Role role = this.iamService.createIamRole(Instance.builder()
@@ -720,4 +927,21 @@ class S3ServiceInstanceControllerTest {
 			.isInstanceOf(NoSuchBucketException.class);
 	}
 
-}
\ No newline at end of file
+	JsonNode awaitLastOperation(String operation) throws InterruptedException {
+		JsonNode lastOperation = null;
+		for (int i = 0; i < 60; i++) {
+			lastOperation = this.restClient.get()
+				.uri("/v2/service_instances/{instanceId}/last_operation?service_id={serviceId}&plan_id={planId}&operation={operation}",
+						instanceId, serviceId, planId, operation)
+				.retrieve()
+				.body(JsonNode.class);
+			assertThat(lastOperation).isNotNull();
+			if (!lastOperation.get("state").asText().equals("in progress")) {
+				break;
+			}
+			Thread.sleep(500);
+		}
+		return lastOperation;
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.example.awsservicebroker.servicebroker.api;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.example.awsservicebroker.aws.Instance;
+import com.example.awsservicebroker.aws.iam.IamService;
+import com.example.awsservicebroker.aws.s3.S3Service;
+import com.example.awsservicebroker.config.TestConfig;
+import com.example.awsservicebroker.servicebroker.AwsService;
+import com.example.awsservicebroker.servicebroker.service.S3ServiceBrokerService;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.providers.AwsRegionProvider;
+import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.Role;
+import software.amazon.awssdk.services.iam.model.Tag;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.LifecycleRule;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.client.RestClient;
+
+import static com.example.awsservicebroker.servicebroker.service.ServiceBrokerService.TAG_DELIMITER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,
+		properties = { "iam.oidc-provider-arn=arn:aws:iam::123456789012:oidc-provider/example.com",
+				"s3.deprovision.mode=expire", "s3.lookup-backend=tagging-api" })
+@ActiveProfiles("testcontainers")
+@Import(TestConfig.class)
+class S3ServiceInstanceExpireControllerTest {
+
+	RestClient restClient;
+
+	@Autowired
+	IamService iamService;
+
+	@Autowired
+	IamClient iamClient;
+
+	@Autowired
+	S3Service s3Service;
+
+	@Autowired
+	S3ServiceBrokerService s3ServiceBrokerService;
+
+	@Autowired
+	S3Client s3Client;
+
+	@Autowired
+	AwsRegionProvider regionProvider;
+
+	String instanceId = "a2148c98-7d28-4bb6-853c-7761db9b9d5c";
+
+	String instanceName = "foo";
+
+	String serviceId = AwsService.S3.serviceId();
+
+	String planId = "a42e2c0c-64e0-41c5-a59c-be52c592812e";
+
+	String organizationGuid = "4b84793c-f3ea-4a55-92b7-942726aac163";
+
+	String spaceGuid = "34e1bb23-0e76-4aad-95d7-1abe3ea1dcd8";
+
+	String organizationName = "demo";
+
+	String spaceName = "test";
+
+	@BeforeEach
+	void setUp(@Autowired RestClient.Builder restClientBuilder, @LocalServerPort int port) {
+		this.restClient = restClientBuilder.baseUrl("http://localhost:" + port).build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.iamService.deleteIamRoleByOrgNameAndSpaceName(organizationName, spaceName);
+		this.s3Service.deleteBucketByInstanceId(instanceId);
+	}
+
+	@Test
+	void deprovisioning_expires_bucket_and_finalizer_deletes_it() {
+		Role role = this.iamService.createIamRole(Instance.builder()
+			.instanceId(UUID.randomUUID().toString())
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build());
+		this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}", instanceId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "parameters": {
+					    "role_name": "%s"
+					  },
+					  "organization_guid": "%s",
+					  "space_guid": "%s",
+					  "maintenance_info": {
+					    "version": "2.1.1+abcdef"
+					  }
+					}
+					""".formatted(serviceId, planId, organizationGuid, spaceGuid, organizationName, spaceName,
+					instanceName, role.roleName(), organizationGuid, spaceGuid))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		String bucketName = this.s3Service.defaultBucketName(instanceId);
+		String roleTagValue = bucketName + TAG_DELIMITER + this.regionProvider.getRegion().id();
+		for (int i = 0; i < 3; i++) {
+			this.s3Service.putObject(bucketName, "test" + i, "This is test" + i);
+		}
+		ResponseEntity<JsonNode> response = this.restClient.delete()
+			.uri("/v2/service_instances/{instanceId}?service_id={serviceId}&plan_id={planId}", instanceId, serviceId,
+					planId)
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		// the bucket is left to the lifecycle rules and marked for the finalizer
+		assertThat(this.s3Client.getBucketLifecycleConfiguration(builder -> builder.bucket(bucketName)).rules())
+			.extracting(LifecycleRule::id)
+			.containsExactlyInAnyOrder("expire-all-versions", "remove-expired-delete-markers");
+		assertThat(this.s3Client.getBucketTagging(builder -> builder.bucket(bucketName)).tagSet())
+			.anyMatch(tag -> tag.key().equals("pending_deletion"));
+		assertThat(this.listRoleTags(role)).contains(Tag.builder()
+			.key(AwsService.S3.roleTagKey(instanceId))
+			.value(roleTagValue + TAG_DELIMITER + "pending_deletion")
+			.build());
+		// the finalizer keeps a bucket that has not been emptied yet
+		this.s3ServiceBrokerService.finalizePendingDeletions();
+		assertThat(this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName))).isNotNull();
+		assertThat(this.listRoleTags(role)).anyMatch(tag -> tag.key().equals(AwsService.S3.roleTagKey(instanceId)));
+		// as the lifecycle rules would
+		for (int i = 0; i < 3; i++) {
+			String objectKey = "test" + i;
+			this.s3Client.deleteObject(builder -> builder.bucket(bucketName).key(objectKey));
+		}
+		this.s3ServiceBrokerService.finalizePendingDeletions();
+		assertThatThrownBy(() -> this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName)))
+			.isInstanceOf(NoSuchBucketException.class);
+		assertThat(this.listRoleTags(role)).noneMatch(tag -> tag.key().equals(AwsService.S3.roleTagKey(instanceId)));
+	}
+
+	List<Tag> listRoleTags(Role role) {
+		return this.iamClient.listRoleTags(builder -> builder.roleName(role.roleName())).tags();
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.example.awsservicebroker.servicebroker.api;
+
+import java.util.UUID;
+
+import com.example.awsservicebroker.aws.Instance;
+import com.example.awsservicebroker.aws.iam.IamService;
+import com.example.awsservicebroker.aws.s3.S3Service;
+import com.example.awsservicebroker.config.TestConfig;
+import com.example.awsservicebroker.servicebroker.AwsService;
+import com.example.awsservicebroker.servicebroker.service.InstanceStateStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.iam.model.Role;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,
+		properties = { "iam.oidc-provider-arn=arn:aws:iam::123456789012:oidc-provider/example.com" })
+@ActiveProfiles("testcontainers")
+@Import(TestConfig.class)
+class S3ServiceInstanceProvisioningFailureControllerTest {
+
+	RestClient restClient;
+
+	@Autowired
+	IamService iamService;
+
+	@Autowired
+	S3Service s3Service;
+
+	@Autowired
+	S3Client s3Client;
+
+	@SpyBean
+	InstanceStateStore instanceStateStore;
+
+	String instanceId = "a2148c98-7d28-4bb6-853c-7761db9b9d5c";
+
+	String instanceName = "foo";
+
+	String serviceId = AwsService.S3.serviceId();
+
+	String planId = "a42e2c0c-64e0-41c5-a59c-be52c592812e";
+
+	String organizationGuid = "4b84793c-f3ea-4a55-92b7-942726aac163";
+
+	String spaceGuid = "34e1bb23-0e76-4aad-95d7-1abe3ea1dcd8";
+
+	String organizationName = "demo";
+
+	String spaceName = "test";
+
+	@BeforeEach
+	void setUp(@Autowired RestClient.Builder restClientBuilder, @LocalServerPort int port) {
+		this.restClient = restClientBuilder.baseUrl("http://localhost:" + port).build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.iamService.deleteIamRoleByOrgNameAndSpaceName(organizationName, spaceName);
+		this.s3Service.deleteBucketByInstanceId(instanceId);
+	}
+
+	@Test
+	void provisioning_deletes_bucket_when_role_tag_cannot_be_put() {
+		Role role = this.iamService.createIamRole(Instance.builder()
+			.instanceId(UUID.randomUUID().toString())
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build());
+		doThrow(new IllegalStateException("Failed to save the instance state")).when(this.instanceStateStore)
+			.save(eq(AwsService.S3.roleTagKey(instanceId)), any());
+		ResponseEntity<JsonNode> response = this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}", instanceId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "parameters": {
+					    "role_name": "%s"
+					  },
+					  "organization_guid": "%s",
+					  "space_guid": "%s",
+					  "maintenance_info": {
+					    "version": "2.1.1+abcdef"
+					  }
+					}
+					""".formatted(serviceId, planId, organizationGuid, spaceGuid, organizationName, spaceName,
+					instanceName, role.roleName(), organizationGuid, spaceGuid))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode().is5xxServerError()).isTrue();
+		// the put-role-tag step failed, so the bucket created before it has been deleted
+		String bucketName = this.s3Service.defaultBucketName(instanceId);
+		assertThatThrownBy(() -> this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName)))
+			.isInstanceOf(NoSuchBucketException.class);
+	}
+
+}
@@ -0,0 +1,200 @@
+package com.example.awsservicebroker.servicebroker.api;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import com.example.awsservicebroker.aws.Instance;
+import com.example.awsservicebroker.aws.iam.IamService;
+import com.example.awsservicebroker.aws.s3.S3Service;
+import com.example.awsservicebroker.config.TestConfig;
+import com.example.awsservicebroker.servicebroker.AwsService;
+import com.example.awsservicebroker.servicebroker.LastOperation;
+import com.example.awsservicebroker.servicebroker.service.OperationStore;
+import com.example.awsservicebroker.servicebroker.service.OperationStore.OperationRecord;
+import com.example.awsservicebroker.servicebroker.service.ServiceBrokerService;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.Role;
+import software.amazon.awssdk.services.iam.model.Tag;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Bucket;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,
+		properties = { "iam.oidc-provider-arn=arn:aws:iam::123456789012:oidc-provider/example.com",
+				"s3.lookup-backend=tagging-api" })
+@ActiveProfiles("testcontainers")
+@Import(TestConfig.class)
+class S3ServiceInstanceTaggingApiControllerTest {
+
+	RestClient restClient;
+
+	@Autowired
+	IamService iamService;
+
+	@Autowired
+	IamClient iamClient;
+
+	@Autowired
+	S3Service s3Service;
+
+	@Autowired
+	S3Client s3Client;
+
+	@Autowired
+	OperationStore operationStore;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	String instanceId = "a2148c98-7d28-4bb6-853c-7761db9b9d5c";
+
+	String instanceName = "foo";
+
+	String serviceId = AwsService.S3.serviceId();
+
+	String planId = "a42e2c0c-64e0-41c5-a59c-be52c592812e";
+
+	String organizationGuid = "4b84793c-f3ea-4a55-92b7-942726aac163";
+
+	String spaceGuid = "34e1bb23-0e76-4aad-95d7-1abe3ea1dcd8";
+
+	String organizationName = "demo";
+
+	String spaceName = "test";
+
+	@BeforeEach
+	void setUp(@Autowired RestClient.Builder restClientBuilder, @LocalServerPort int port) {
+		this.restClient = restClientBuilder.baseUrl("http://localhost:" + port).build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.iamService.deleteIamRoleByOrgNameAndSpaceName(organizationName, spaceName);
+		this.s3Service.deleteBucketByInstanceId(instanceId);
+	}
+
+	@Test
+	void interrupted_provisioning_with_bucket_name_is_compensated() throws Exception {
+		// interrupted after tagging the bucket, before putting the role tag
+		String bucketName = "test-" + UUID.randomUUID();
+		this.s3Service.createBucket(Instance.builder()
+			.instanceId(instanceId)
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build(), bucketName, null);
+		this.operationStore.save(instanceId, new OperationRecord("provision", LastOperation.State.IN_PROGRESS, null,
+				Instant.now().minus(Duration.ofHours(1))));
+		double taggingApiHits = this.lookups("tagging-api");
+		double scanHits = this.lookups("scan");
+		JsonNode lastOperation = this.awaitLastOperation("provision");
+		assertThat(lastOperation.get("state").asText()).isEqualTo("failed");
+		assertThatThrownBy(() -> this.s3Client.getBucketLocation(builder -> builder.bucket(bucketName)))
+			.isInstanceOf(NoSuchBucketException.class);
+		// the bucket does not have the default name, and was found by its instance_id tag
+		assertThat(this.lookups("tagging-api")).isEqualTo(taggingApiHits + 1);
+		assertThat(this.lookups("scan")).isEqualTo(scanHits);
+	}
+
+	@Test
+	void bucket_name_known_from_the_state_is_found_with_head_bucket() {
+		Role role = this.iamService.createIamRole(Instance.builder()
+			.instanceId(UUID.randomUUID().toString())
+			.instanceName(instanceName)
+			.orgGuid(organizationGuid)
+			.orgName(organizationName)
+			.spaceGuid(spaceGuid)
+			.spaceName(spaceName)
+			.build());
+		String bucketName = "test-" + UUID.randomUUID();
+		ResponseEntity<JsonNode> response = this.restClient.put()
+			.uri("/v2/service_instances/{instanceId}", instanceId)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body("""
+					{
+					  "service_id": "%s",
+					  "plan_id": "%s",
+					  "context": {
+					    "platform": "cloudfoundry",
+					    "organization_guid": "%s",
+					    "space_guid": "%s",
+					    "organization_name": "%s",
+					    "space_name": "%s",
+					    "instance_name": "%s"
+					  },
+					  "parameters": {
+					    "role_name": "%s",
+					    "bucket_name": "%s"
+					  }
+					}
+					""".formatted(serviceId, planId, organizationGuid, spaceGuid, organizationName, spaceName,
+					instanceName, role.roleName(), bucketName))
+			.retrieve()
+			.toEntity(JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		String roleTagValue = this.iamClient.listRoleTags(builder -> builder.roleName(role.roleName()))
+			.tags()
+			.stream()
+			.filter(tag -> tag.key().equals(AwsService.S3.roleTagKey(instanceId)))
+			.map(Tag::value)
+			.findAny()
+			.orElseThrow();
+		String bucketNameFromState = ServiceBrokerService.splitTagValue(roleTagValue)[0];
+		assertThat(bucketNameFromState).isEqualTo(bucketName);
+		double headBucketHits = this.lookups("head-bucket");
+		double taggingApiHits = this.lookups("tagging-api");
+		assertThat(this.s3Service.findBucketByInstanceId(instanceId, bucketNameFromState))
+			.map(Bucket::name)
+			.contains(bucketName);
+		assertThat(this.lookups("head-bucket")).isEqualTo(headBucketHits + 1);
+		assertThat(this.lookups("tagging-api")).isEqualTo(taggingApiHits);
+		// without the name, the default name misses and the Tagging API answers
+		assertThat(this.s3Service.findBucketByInstanceId(instanceId)).map(Bucket::name).contains(bucketName);
+		assertThat(this.lookups("head-bucket")).isEqualTo(headBucketHits + 1);
+		assertThat(this.lookups("tagging-api")).isEqualTo(taggingApiHits + 1);
+	}
+
+	double lookups(String path) {
+		return this.meterRegistry.counter("s3.bucket.lookups", "path", path).count();
+	}
+
+	JsonNode awaitLastOperation(String operation) throws InterruptedException {
+		JsonNode lastOperation = null;
+		for (int i = 0; i < 60; i++) {
+			lastOperation = this.restClient.get()
+				.uri("/v2/service_instances/{instanceId}/last_operation?service_id={serviceId}&plan_id={planId}&operation={operation}",
+						instanceId, serviceId, planId, operation)
+				.retrieve()
+				.body(JsonNode.class);
+			assertThat(lastOperation).isNotNull();
+			if (!lastOperation.get("state").asText().equals("in progress")) {
+				break;
+			}
+			Thread.sleep(500);
+		}
+		return lastOperation;
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.example.awsservicebroker.servicebroker.api;
+
+import java.time.Duration;
+import java.util.Map;
+
+import com.example.awsservicebroker.aws.CircuitOpenException;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServiceBrokerExceptionHandlerTest {
+
+	ServiceBrokerExceptionHandler exceptionHandler = new ServiceBrokerExceptionHandler();
+
+	@Test
+	void circuit_open_is_service_unavailable() {
+		ResponseEntity<Map<String, Object>> response = this.handle(Duration.ofSeconds(30));
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("30");
+		assertThat(response.getBody()).containsExactly(
+				Map.entry("description", "The circuit for iam write operations is open. Try again later."));
+	}
+
+	@Test
+	void retry_after_is_rounded_up_to_whole_seconds() {
+		assertThat(this.retryAfter(Duration.ofMillis(1000))).isEqualTo("1");
+		assertThat(this.retryAfter(Duration.ofMillis(1001))).isEqualTo("2");
+		assertThat(this.retryAfter(Duration.ofMillis(29_500))).isEqualTo("30");
+	}
+
+	@Test
+	void retry_after_is_at_least_one_second() {
+		assertThat(this.retryAfter(Duration.ZERO)).isEqualTo("1");
+		assertThat(this.retryAfter(Duration.ofMillis(1))).isEqualTo("1");
+		assertThat(this.retryAfter(Duration.ofMillis(-5))).isEqualTo("1");
+	}
+
+	String retryAfter(Duration retryAfter) {
+		return this.handle(retryAfter).getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+	}
+
+	ResponseEntity<Map<String, Object>> handle(Duration retryAfter) {
+		return this.exceptionHandler.handleCircuitOpenException(new CircuitOpenException("iam", "write", retryAfter));
+	}
+
+}
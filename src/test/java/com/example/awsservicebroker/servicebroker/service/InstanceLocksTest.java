@@ -0,0 +1,63 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InstanceLocksTest {
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	InstanceLocks instanceLocks = new InstanceLocks(this.meterRegistry);
+
+	@Test
+	void instance_is_locked_once() {
+		try (InstanceLocks.Lock lock = this.instanceLocks.lock("i1")) {
+			assertThatThrownBy(() -> this.instanceLocks.lock("i1"))
+				.isInstanceOf(ConcurrencyException.class)
+				.hasMessage("Another operation for i1 is in progress.");
+			this.instanceLocks.lock("i2").close();
+		}
+		this.instanceLocks.lock("i1").close();
+		assertThat(this.meterRegistry.counter("instance.lock.conflicts").count()).isEqualTo(1);
+	}
+
+	@Test
+	void binding_conflicts_with_its_instance() {
+		try (InstanceLocks.Lock lock = this.instanceLocks.lock("i1")) {
+			assertThatThrownBy(() -> this.instanceLocks.lock("i1/b1"))
+				.isInstanceOf(ConcurrencyException.class)
+				.hasMessage("Another operation for i1 is in progress.");
+			this.instanceLocks.lock("i2/b1").close();
+		}
+		try (InstanceLocks.Lock lock = this.instanceLocks.lock("i1/b1")) {
+			assertThatThrownBy(() -> this.instanceLocks.lock("i1")).isInstanceOf(ConcurrencyException.class);
+			assertThatThrownBy(() -> this.instanceLocks.lock("i1/b1")).isInstanceOf(ConcurrencyException.class);
+		}
+		this.instanceLocks.lock("i1").close();
+	}
+
+	@Test
+	void bindings_of_one_instance_run_in_parallel() {
+		InstanceLocks.Lock first = this.instanceLocks.lock("i1/b1");
+		InstanceLocks.Lock second = this.instanceLocks.lock("i1/b2");
+		first.close();
+		assertThatThrownBy(() -> this.instanceLocks.lock("i1")).isInstanceOf(ConcurrencyException.class);
+		second.close();
+		this.instanceLocks.lock("i1").close();
+	}
+
+	@Test
+	void closing_twice_releases_once() {
+		InstanceLocks.Lock first = this.instanceLocks.lock("i1/b1");
+		InstanceLocks.Lock second = this.instanceLocks.lock("i1/b2");
+		first.close();
+		first.close();
+		assertThatThrownBy(() -> this.instanceLocks.lock("i1")).isInstanceOf(ConcurrencyException.class);
+		second.close();
+		this.instanceLocks.lock("i1").close();
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.example.awsservicebroker.ServiceBrokerProps;
+import com.example.awsservicebroker.ServiceBrokerProps.BindingPolicy;
+import com.example.awsservicebroker.ServiceBrokerProps.InstanceStateBackend;
+import com.example.awsservicebroker.servicebroker.AwsService;
+import com.example.awsservicebroker.servicebroker.LastOperation;
+import com.example.awsservicebroker.servicebroker.LastOperation.State;
+import com.example.awsservicebroker.servicebroker.service.OperationStore.OperationRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.core.io.ClassPathResource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OperationServiceTest {
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	InMemoryOperationStore operationStore = new InMemoryOperationStore();
+
+	InstanceLocks instanceLocks = new InstanceLocks(this.meterRegistry);
+
+	OperationService operationService = new OperationService(this.operationStore, this.instanceLocks, props(),
+			this.meterRegistry);
+
+	String serviceId = AwsService.S3.serviceId();
+
+	@AfterEach
+	void tearDown() {
+		this.operationService.destroy();
+	}
+
+	@Test
+	void operation_without_record_is_not_interrupted() {
+		assertThat(this.operationService.lastOperation("i1", "deprovision")).isEmpty();
+		assertThat(this.operationService.isInterrupted("i1", "deprovision")).isFalse();
+	}
+
+	@Test
+	void stale_operation_in_progress_is_interrupted() {
+		this.operationStore.save("i1",
+				new OperationRecord("deprovision", State.IN_PROGRESS, null, Instant.now().minus(Duration.ofHours(1))));
+		assertThat(this.operationService.lastOperation("i1", "deprovision")).isEmpty();
+		assertThat(this.operationService.isInterrupted("i1", "deprovision")).isTrue();
+		assertThat(this.operationService.isInterrupted("i1", "provision")).isFalse();
+	}
+
+	@Test
+	void ended_operation_is_not_interrupted() {
+		this.operationStore.save("i1",
+				new OperationRecord("deprovision", State.FAILED, "failed", Instant.now().minus(Duration.ofHours(1))));
+		assertThat(this.operationService.lastOperation("i1", "deprovision"))
+			.contains(new LastOperation(State.FAILED, "failed"));
+		assertThat(this.operationService.isInterrupted("i1", "deprovision")).isFalse();
+	}
+
+	@Test
+	void start_records_the_accepted_operation() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		this.operationService.start(this.serviceId, "i1", "deprovision", progressReporter -> {
+			try {
+				release.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertThat(this.operationStore.find("i1")).map(OperationRecord::state).contains(State.IN_PROGRESS);
+		assertThat(this.operationService.isInterrupted("i1", "deprovision")).isFalse();
+		release.countDown();
+		assertThat(this.awaitLastOperation("i1", "deprovision")).contains(new LastOperation(State.SUCCEEDED, null));
+	}
+
+	@Test
+	void start_fails_if_the_operation_cannot_be_recorded() {
+		OperationService operationService = new OperationService(new FailingOperationStore(), this.instanceLocks,
+				props(), this.meterRegistry);
+		try {
+			assertThatThrownBy(() -> operationService.start(this.serviceId, "i1", "deprovision", progressReporter -> {
+			})).isInstanceOf(IllegalStateException.class);
+			// the instance is not left locked
+			this.instanceLocks.lock("i1").close();
+		}
+		finally {
+			operationService.destroy();
+		}
+	}
+
+	Optional<LastOperation> awaitLastOperation(String key, String operation) throws InterruptedException {
+		Optional<LastOperation> lastOperation = Optional.empty();
+		for (int i = 0; i < 50; i++) {
+			lastOperation = this.operationService.lastOperation(key, operation);
+			if (lastOperation.isPresent() && lastOperation.get().state() != State.IN_PROGRESS) {
+				break;
+			}
+			TimeUnit.MILLISECONDS.sleep(100);
+		}
+		return lastOperation;
+	}
+
+	static ServiceBrokerProps props() {
+		return new ServiceBrokerProps(new ClassPathResource("catalog.yaml"), null,
+				new ServiceBrokerProps.Operations(2, 10), InstanceStateBackend.ROLE_TAG, BindingPolicy.PER_BINDING);
+	}
+
+	static class FailingOperationStore implements OperationStore {
+
+		@Override
+		public Optional<OperationRecord> find(String key) {
+			return Optional.empty();
+		}
+
+		@Override
+		public void save(String key, OperationRecord record) {
+			throw new IllegalStateException("The state bucket is not available");
+		}
+
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.example.awsservicebroker.servicebroker.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import com.example.awsservicebroker.config.TestConfig;
+import com.example.awsservicebroker.servicebroker.service.InstanceStateStore.InstanceState;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.BucketAlreadyOwnedByYouException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = { "iam.oidc-provider-arn=arn:aws:iam::123456789012:oidc-provider/example.com" })
+@ActiveProfiles("testcontainers")
+@Import(TestConfig.class)
+class S3InstanceStateStoreTest {
+
+	static final String STATE_BUCKET = "aws-service-broker-state";
+
+	@Autowired
+	S3Client s3Client;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	InMemoryStore legacyStore = new InMemoryStore();
+
+	S3InstanceStateStore store;
+
+	@BeforeEach
+	void setUp() {
+		try {
+			this.s3Client.createBucket(builder -> builder.bucket(STATE_BUCKET));
+		}
+		catch (BucketAlreadyOwnedByYouException e) {
+			// created by a previous test
+		}
+		this.store = new S3InstanceStateStore(this.s3Client, STATE_BUCKET, this.objectMapper, this.legacyStore);
+		this.store.delete("s3-test");
+	}
+
+	@Test
+	void save_find_and_delete() {
+		assertThat(this.store.find("s3-test")).isEmpty();
+		InstanceState state = new InstanceState("role", "bucket|region", Set.of("b1", "b2"));
+		this.store.save("s3-test", state);
+		assertThat(this.store.find("s3-test")).contains(state);
+		this.store.delete("s3-test");
+		assertThat(this.store.find("s3-test")).isEmpty();
+	}
+
+	@Test
+	void find_reads_state_saved_before_binding_ids_were_kept() {
+		this.s3Client.putObject(builder -> builder.bucket(STATE_BUCKET).key("instances/s3-test.json"),
+				RequestBody.fromString("""
+						{"roleName": "role", "value": "bucket|region"}
+						"""));
+		assertThat(this.store.find("s3-test")).contains(new InstanceState("role", "bucket|region"));
+	}
+
+	@Test
+	void find_moves_legacy_state_into_bucket() {
+		InstanceState state = new InstanceState("role", "bucket|region");
+		this.legacyStore.save("s3-test", state);
+		assertThat(this.store.find("s3-test")).contains(state);
+		assertThat(this.legacyStore.find("s3-test")).isEmpty();
+		// found in the bucket from now on
+		this.legacyStore.save("s3-test", new InstanceState("other", "other|region"));
+		assertThat(this.store.find("s3-test")).contains(state);
+	}
+
+	@Test
+	void find_without_legacy_state() {
+		assertThat(this.store.find("s3-test")).isEmpty();
+		assertThat(this.legacyStore.finds).isEqualTo(1);
+	}
+
+	@Test
+	void update_applies_to_saved_state() {
+		this.store.save("s3-test", new InstanceState("role", "bucket|region", Set.of("b1")));
+		InstanceState expected = new InstanceState("role", "bucket|region", Set.of("b1", "b2"));
+		assertThat(this.store.update("s3-test", state -> state.withBindingId("b2"))).contains(expected);
+		assertThat(this.store.find("s3-test")).contains(expected);
+	}
+
+	@Test
+	void update_applies_to_legacy_state() {
+		this.legacyStore.save("s3-test", new InstanceState("role", "bucket|region"));
+		InstanceState expected = new InstanceState("role", "bucket|region", Set.of("b1"));
+		assertThat(this.store.update("s3-test", state -> state.withBindingId("b1"))).contains(expected);
+		assertThat(this.store.find("s3-test")).contains(expected);
+		assertThat(this.legacyStore.find("s3-test")).isEmpty();
+	}
+
+	@Test
+	void update_without_state() {
+		assertThat(this.store.update("s3-test", state -> state.withBindingId("b1"))).isEmpty();
+		assertThat(this.store.find("s3-test")).isEmpty();
+	}
+
+	static class InMemoryStore implements InstanceStateStore {
+
+		final Map<String, InstanceState> states = new HashMap<>();
+
+		int finds;
+
+		@Override
+		public Optional<InstanceState> find(String key) {
+			this.finds++;
+			return Optional.ofNullable(this.states.get(key));
+		}
+
+		@Override
+		public void save(String key, InstanceState state) {
+			this.states.put(key, state);
+		}
+
+		@Override
+		public void delete(String key) {
+			this.states.remove(key);
+		}
+
+	}
+
+}